@@ -0,0 +1,64 @@
+package ru.mrhellko.library.assembler;
+
+import org.openjdk.jmh.annotations.*;
+import ru.mrhellko.library.Entity.Book;
+import ru.mrhellko.library.benchmark.CatalogState;
+import ru.mrhellko.library.dao.BookDAO;
+import ru.mrhellko.library.dto.BookField;
+import ru.mrhellko.library.dto.BookPageDTO;
+import ru.mrhellko.library.dto.BookWithAverageRatingDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Заполнение страницы книг авторами, жанрами и средней оценкой.
+ * <p>
+ * hydrateBooks замеряется отдельно от чтения самих книг: в каждом вызове используются
+ * копии заранее прочитанной страницы без авторов и жанров. getFullAllBooks замеряет весь путь
+ * GET /books целиком, getFullBookWithAverageRatingDTO - GET /books/{id} одним запросом.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HydrationBenchmark {
+    @Param({"50", "500"})
+    public int pageSize;
+
+    private BookAssembler bookAssembler;
+    private long afterId;
+    private List<Book> page;
+
+    @Setup(Level.Trial)
+    public void setUp(CatalogState catalog) {
+        bookAssembler = catalog.getBean(BookAssembler.class);
+        afterId = catalog.bookCount / 2;
+        page = catalog.getBean(BookDAO.class).getAll(afterId, pageSize);
+    }
+
+    @Benchmark
+    public List<BookWithAverageRatingDTO> hydrateBooks() {
+        List<Book> books = new ArrayList<>(page.size());
+        for (Book book : page) {
+            Book copy = new Book();
+            copy.setId(book.getId());
+            copy.setBookName(book.getBookName());
+            books.add(copy);
+        }
+        return bookAssembler.hydrateBooks(books, BookField.ALL);
+    }
+
+    @Benchmark
+    public BookWithAverageRatingDTO getFullBookWithAverageRatingDTO() {
+        return bookAssembler.getFullBookWithAverageRatingDTO(afterId + 1);
+    }
+
+    @Benchmark
+    public BookPageDTO getFullAllBooks() {
+        return bookAssembler.getFullAllBooks(afterId, pageSize, BookField.ALL);
+    }
+}
@@ -0,0 +1,107 @@
+package ru.mrhellko.library.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.mrhellko.library.LibraryApplication;
+
+/**
+ * Контекст приложения на встроенной H2 с каталогом заданного размера.
+ * <p>
+ * Каталог генерируется в базе через SYSTEM_RANGE, без передачи строк из JVM, поэтому
+ * заполнение миллиона книг укладывается в секунды. Схема создаётся теми же миграциями Liquibase.
+ */
+@State(Scope.Benchmark)
+public class CatalogState {
+    private static final int GENRE_COUNT = 20;
+    private static final int GENRES_PER_BOOK = 2;
+
+    @Param({"1000", "100000", "1000000"})
+    public int bookCount;
+    @Param({"1", "3"})
+    public int authorsPerBook;
+    @Param({"0", "5"})
+    public int reviewsPerBook;
+
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(LibraryApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:bench;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+                        "spring.datasource.driver-class-name=org.h2.Driver",
+                        "spring.datasource.username=sa",
+                        "spring.datasource.password=",
+                        "logging.level.org.springframework.jdbc.core=INFO")
+                .run();
+        seed(context.getBean(JdbcTemplate.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    public <T> T getBean(Class<T> beanClass) {
+        return context.getBean(beanClass);
+    }
+
+    private void seed(JdbcTemplate jdbcTemplate) {
+        int authorCount = Math.max(bookCount / 2, authorsPerBook);
+        jdbcTemplate.update("""
+                insert into authors (id, author_name)
+                select x, 'Author ' || x from system_range(1, ?)""", authorCount);
+        jdbcTemplate.update("""
+                insert into genres (id, genre_name)
+                select x, 'Genre ' || x from system_range(1, ?)""", GENRE_COUNT);
+        jdbcTemplate.update("""
+                insert into books (id, book_name)
+                select x, 'Book ' || x from system_range(1, ?)""", bookCount);
+        jdbcTemplate.update("""
+                insert into book_authors (book_id, author_id)
+                select b.x, mod(b.x + a.x, ?) + 1
+                from system_range(1, ?) b cross join system_range(0, ?) a""",
+                authorCount, bookCount, authorsPerBook - 1);
+        jdbcTemplate.update("""
+                insert into book_genres (book_id, genre_id)
+                select b.x, mod(b.x + g.x, ?) + 1
+                from system_range(1, ?) b cross join system_range(0, ?) g""",
+                GENRE_COUNT, bookCount, GENRES_PER_BOOK - 1);
+        if (reviewsPerBook > 0) {
+            jdbcTemplate.update("""
+                    insert into book_reviews (id, book_id, rating, reviewer_name, review_text)
+                    select (b.x - 1) * ? + r.x + 1, b.x, mod(b.x + r.x, 10) + 1, 'Reviewer', 'Review text'
+                    from system_range(1, ?) b cross join system_range(0, ?) r""",
+                    reviewsPerBook, bookCount, reviewsPerBook - 1);
+        }
+        jdbcTemplate.update("""
+                insert into book_rating_summary (book_id, review_count, rating_sum,
+                                                 rating_1, rating_2, rating_3, rating_4, rating_5,
+                                                 rating_6, rating_7, rating_8, rating_9, rating_10)
+                select b.id,
+                       count(r.rating),
+                       coalesce(sum(r.rating), 0),
+                       count(case when r.rating = 1 then 1 end),
+                       count(case when r.rating = 2 then 1 end),
+                       count(case when r.rating = 3 then 1 end),
+                       count(case when r.rating = 4 then 1 end),
+                       count(case when r.rating = 5 then 1 end),
+                       count(case when r.rating = 6 then 1 end),
+                       count(case when r.rating = 7 then 1 end),
+                       count(case when r.rating = 8 then 1 end),
+                       count(case when r.rating = 9 then 1 end),
+                       count(case when r.rating = 10 then 1 end)
+                from books b
+                         left join book_reviews r on r.book_id = b.id
+                group by b.id""");
+    }
+}
@@ -0,0 +1,68 @@
+package ru.mrhellko.library.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.mrhellko.library.Entity.Book;
+import ru.mrhellko.library.dao.AuthorDAO;
+import ru.mrhellko.library.dao.BookDAO;
+import ru.mrhellko.library.dao.BookReviewDAO;
+import ru.mrhellko.library.dao.GenreDAO;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Запросы DAO, из которых собирается страница каталога, вместе с их row mapper'ами.
+ * Страница берётся из середины каталога, чтобы не попадать только в первые блоки индекса.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DAOReadBenchmark {
+    @Param({"50", "500"})
+    public int pageSize;
+
+    private BookDAO bookDAO;
+    private AuthorDAO authorDAO;
+    private GenreDAO genreDAO;
+    private BookReviewDAO bookReviewDAO;
+    private long afterId;
+    private Set<Long> bookIds;
+
+    @Setup(Level.Trial)
+    public void setUp(CatalogState catalog) {
+        bookDAO = catalog.getBean(BookDAO.class);
+        authorDAO = catalog.getBean(AuthorDAO.class);
+        genreDAO = catalog.getBean(GenreDAO.class);
+        bookReviewDAO = catalog.getBean(BookReviewDAO.class);
+        afterId = catalog.bookCount / 2;
+        bookIds = bookDAO.getAll(afterId, pageSize).stream()
+                .map(Book::getId)
+                .collect(Collectors.toSet());
+    }
+
+    @Benchmark
+    public List<Book> getAll() {
+        return bookDAO.getAll(afterId, pageSize);
+    }
+
+    @Benchmark
+    public void getAuthorsForBooks(Blackhole blackhole) {
+        blackhole.consume(authorDAO.getAuthorsForBooks(bookIds));
+    }
+
+    @Benchmark
+    public void getGenresForBooks(Blackhole blackhole) {
+        blackhole.consume(genreDAO.getGenresForBooks(bookIds));
+    }
+
+    @Benchmark
+    public void getRatingsForBooks(Blackhole blackhole) {
+        blackhole.consume(bookReviewDAO.getRatingsForBooks(bookIds));
+    }
+}
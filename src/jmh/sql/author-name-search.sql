@@ -0,0 +1,83 @@
+-- Бенчмарк поиска книг по подстроке имени автора (GET /books?authorName=) на 1 000 000 авторов.
+-- Сравнивает старый запрос (distinct + join, шаблон собирается в SQL) и новый (полусоединение,
+-- шаблон параметром) до и после создания триграммного индекса.
+--
+-- Запуск на отдельной БД PostgreSQL, схема bench создаётся заново:
+--   psql -d library_bench -f src/jmh/sql/author-name-search.sql
+-- Latency смотреть в строках "Execution Time" вывода explain analyze.
+
+\timing on
+\set ON_ERROR_STOP on
+
+DROP SCHEMA IF EXISTS bench CASCADE;
+CREATE SCHEMA bench;
+SET search_path TO bench, public;
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE TABLE books
+(
+    id        bigint PRIMARY KEY,
+    book_name text
+);
+CREATE TABLE authors
+(
+    id          bigint PRIMARY KEY,
+    author_name text
+);
+CREATE TABLE book_authors
+(
+    book_id   bigint not null REFERENCES books (id),
+    author_id bigint not null REFERENCES authors (id),
+    PRIMARY KEY (book_id, author_id)
+);
+CREATE INDEX idx_book_authors_author_id ON book_authors (author_id);
+
+-- 1 000 000 авторов с уникальными именами, по две книги на автора
+INSERT INTO authors (id, author_name)
+SELECT i, 'Author ' || md5(i::text)
+FROM generate_series(1, 1000000) AS i;
+
+INSERT INTO books (id, book_name)
+SELECT i, 'Book ' || i
+FROM generate_series(1, 2000000) AS i;
+
+INSERT INTO book_authors (book_id, author_id)
+SELECT i, (i + 1) / 2
+FROM generate_series(1, 2000000) AS i;
+
+ANALYZE;
+
+PREPARE old_search(text) AS
+    SELECT DISTINCT b.id, b.book_name
+    FROM books b
+             LEFT JOIN book_authors ba ON b.id = ba.book_id
+             JOIN authors a ON ba.author_id = a.id
+    WHERE a.author_name ILIKE '%' || $1 || '%'
+      AND b.id > 0
+    ORDER BY b.id
+    LIMIT 51;
+
+PREPARE new_search(text) AS
+    SELECT b.id, b.book_name
+    FROM books b
+    WHERE b.id IN (SELECT ba.book_id
+                   FROM book_authors ba
+                            JOIN authors a ON ba.author_id = a.id
+                   WHERE a.author_name ILIKE $1 ESCAPE '\')
+      AND b.id > 0
+    ORDER BY b.id
+    LIMIT 51;
+
+-- До: индекса нет, оба запроса читают authors целиком
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE old_search('c4ca42');
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE new_search('%c4ca42%');
+
+CREATE INDEX idx_authors_author_name_trgm ON authors USING gin (author_name gin_trgm_ops);
+ANALYZE authors;
+
+-- После: новый запрос должен идти через Bitmap Index Scan on idx_authors_author_name_trgm
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE old_search('c4ca42');
+EXPLAIN (ANALYZE, BUFFERS) EXECUTE new_search('%c4ca42%');
+
+DROP SCHEMA bench CASCADE;
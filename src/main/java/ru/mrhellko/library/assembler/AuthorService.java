@@ -2,26 +2,44 @@ package ru.mrhellko.library.assembler;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.mrhellko.library.Entity.Author;
 import ru.mrhellko.library.dao.AuthorDAO;
 import ru.mrhellko.library.exception.NotFoundException;
 
+import java.util.List;
+import java.util.Set;
+
 @Service
 public class AuthorService {
     @Autowired
     private AuthorDAO authorDAO;
+    @Autowired
+    private BookCacheInvalidator bookCacheInvalidator;
 
     public Author getAuthorById(Long id) {
-        return authorDAO.getAuthorById(id);
+        //Автор из кэша общий для всех запросов, наружу отдаётся копия
+        Author author = authorDAO.getAuthorById(id);
+        return author == null ? null : new Author(author.getId(), author.getAuthorName());
+    }
+
+    /**
+     * Авторы в порядке ids одним запросом, повторные id отдаются один раз, несуществующие пропускаются.
+     */
+    public List<Author> getAuthorsByIds(List<Long> ids) {
+        Set<Long> uniqueIds = BatchIds.validate(ids);
+        return BatchIds.orderByIds(uniqueIds, authorDAO.getAuthorsByIds(uniqueIds), Author::getId);
     }
 
+    @Transactional
     public Author updateAuthor(Author author, Long id) {
-        Author updatedAuthor = authorDAO.getAuthorById(id);
-        if (updatedAuthor != null) {
-            updatedAuthor.setId(id);
-            updatedAuthor.setAuthorName(author.getAuthorName());
+        //Автор из DAO может лежать в кэше, поэтому изменения собираются в новом объекте
+        if (authorDAO.getAuthorById(id) != null) {
+            Author updatedAuthor = new Author(id, author.getAuthorName());
 
             authorDAO.updateAuthor(updatedAuthor);
+            bookCacheInvalidator.evictAuthor(id);
+            bookCacheInvalidator.evictBooksOfAuthor(id);
             return updatedAuthor;
         } else {
             return null;
@@ -32,10 +50,17 @@ public class AuthorService {
         return authorDAO.saveAuthor(author);
     }
 
+    /**
+     * Связи с книгами удаляются вместе с записью, поэтому книги для очистки кэша находятся до удаления,
+     * а из кэша удаляются после коммита, как и сам автор.
+     */
+    @Transactional
     public void deleteAuthor(Long id) {
+        bookCacheInvalidator.evictBooksOfAuthor(id);
         int resultAuthor = authorDAO.deleteAuthorById(id);
         if (resultAuthor == 0) {
             throw new NotFoundException(id);
         }
+        bookCacheInvalidator.evictAuthor(id);
     }
 }
@@ -0,0 +1,49 @@
+package ru.mrhellko.library.assembler;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Списки id для запросов GET ?ids=1,2,3: ограничение размера и порядок ответа по порядку запроса.
+ */
+final class BatchIds {
+    static final int MAX_BATCH_SIZE = 100;
+
+    private BatchIds() {
+    }
+
+    /**
+     * Id без повторов в порядке первого упоминания.
+     */
+    static Set<Long> validate(List<Long> ids) throws IllegalArgumentException {
+        if (ids == null || ids.isEmpty() || ids.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Ids count must be between 1 and " + MAX_BATCH_SIZE);
+        }
+        Set<Long> uniqueIds = new LinkedHashSet<>();
+        for (Long id : ids) {
+            if (id == null) {
+                throw new IllegalArgumentException("Ids must not contain empty values");
+            }
+            uniqueIds.add(id);
+        }
+        return uniqueIds;
+    }
+
+    /**
+     * Расставляет найденные записи в порядке ids, id без записи пропускаются.
+     */
+    static <T> List<T> orderByIds(Set<Long> ids, Collection<T> items, Function<T, Long> idGetter) {
+        Map<Long, T> index = new HashMap<>();
+        for (T item : items) {
+            index.put(idGetter.apply(item), item);
+        }
+        List<T> ordered = new ArrayList<>(index.size());
+        for (Long id : ids) {
+            T item = index.get(id);
+            if (item != null) {
+                ordered.add(item);
+            }
+        }
+        return ordered;
+    }
+}
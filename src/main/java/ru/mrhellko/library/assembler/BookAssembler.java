@@ -2,24 +2,46 @@ package ru.mrhellko.library.assembler;
 
 import lombok.NonNull;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.mrhellko.library.Entity.Author;
 import ru.mrhellko.library.Entity.Book;
-import ru.mrhellko.library.Entity.BookReview;
 import ru.mrhellko.library.Entity.Genre;
+import ru.mrhellko.library.coalescing.SingleFlight;
+import ru.mrhellko.library.configuration.CacheConfiguration;
+import ru.mrhellko.library.configuration.ReplicaRoutingDataSource;
 import ru.mrhellko.library.dao.AuthorDAO;
 import ru.mrhellko.library.dao.BookDAO;
 import ru.mrhellko.library.dao.BookReviewDAO;
+import ru.mrhellko.library.dao.DeadlineJdbcTemplate;
 import ru.mrhellko.library.dao.GenreDAO;
 import ru.mrhellko.library.dto.BookAuthorDTO;
+import ru.mrhellko.library.dto.BookField;
 import ru.mrhellko.library.dto.BookGenreDTO;
+import ru.mrhellko.library.dto.BookPageDTO;
+import ru.mrhellko.library.dto.BookRatingDTO;
 import ru.mrhellko.library.dto.BookWithAverageRatingDTO;
+import ru.mrhellko.library.exception.DeadlineExceededException;
 import ru.mrhellko.library.exception.NotFoundException;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 public class BookAssembler {
+    public static final int MAX_PAGE_SIZE = 500;
+    public static final int EXPORT_CHUNK_SIZE = 500;
+
     @Autowired
     private BookDAO bookDAO;
     @Autowired
@@ -28,26 +50,96 @@ public class BookAssembler {
     private AuthorDAO authorDAO;
     @Autowired
     private GenreDAO genreDAO;
+    @Autowired
+    private BookLeaderboard bookLeaderboard;
+    @Autowired
+    private BookCacheInvalidator bookCacheInvalidator;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private CacheManager cacheManager;
+    @Value("${library.books.hydration-timeout:2s}")
+    private Duration hydrationTimeout = Duration.ofSeconds(2);
+    @Value("${library.books.export-timeout:30m}")
+    private Duration exportTimeout = Duration.ofMinutes(30);
 
+    /**
+     * Собранная книга кэшируется с версией из BookCacheInvalidator, как и в BookJsonCache. Книга читается
+     * из основной БД, а не из реплики: иначе сразу после изменения в кэш могла бы попасть книга из отстающей реплики.
+     */
     public BookWithAverageRatingDTO getFullBookWithAverageRatingDTO(Long id) {
-        Book book = bookDAO.getBookById(id);
-        if (book != null) {
-            List<Book> books = List.of(book);
-            fillBooksWithAuthors(books);
-            fillBooksWithGenres(books);
-            return fillListOfBookWithAverageRatingDTO(books).getFirst();
-        } else {
-            return null;
+        long version = bookCacheInvalidator.getVersion(id);
+        BookWithAverageRatingDTO cached = getCachedBook(id, version);
+        if (cached != null) {
+            return cached;
+        }
+        BookWithAverageRatingDTO bookWithAverageRatingDTO = bookDAO.getFullBookById(id);
+        Cache cache = cacheManager.getCache(CacheConfiguration.BOOKS_CACHE);
+        if (bookWithAverageRatingDTO != null && cache != null && bookCacheInvalidator.getVersion(id) == version) {
+            cache.put(id, new CachedBook(version, bookWithAverageRatingDTO));
         }
+        return bookWithAverageRatingDTO;
     }
 
-    public List<BookWithAverageRatingDTO> getFullAllBooks() {
-        List<Book> books = bookDAO.getAll();
-        fillBooksWithAuthors(books);
-        fillBooksWithGenres(books);
-        return fillListOfBookWithAverageRatingDTO(books);
+    /**
+     * Книги в порядке ids, повторные id отдаются один раз, несуществующие пропускаются.
+     */
+    public List<BookWithAverageRatingDTO> getBooksByIds(List<Long> ids, Set<BookField> fields) {
+        Set<Long> uniqueIds = BatchIds.validate(ids);
+        //Книги из кэша содержат все поля, лишние отбрасывает фильтр fields в контроллере
+        List<BookWithAverageRatingDTO> books = new ArrayList<>(uniqueIds.size());
+        Set<Long> missingIds = new HashSet<>();
+        for (Long id : uniqueIds) {
+            BookWithAverageRatingDTO cached = getCachedBook(id, bookCacheInvalidator.getVersion(id));
+            if (cached != null) {
+                books.add(cached);
+            } else {
+                missingIds.add(id);
+            }
+        }
+        if (!missingIds.isEmpty()) {
+            books.addAll(ReplicaRoutingDataSource.readOnly(
+                    () -> hydrateBooks(bookDAO.getBooksByIds(missingIds), fields)));
+        }
+        return BatchIds.orderByIds(uniqueIds, books, BookWithAverageRatingDTO::getId);
+    }
+
+    public BookPageDTO getFullAllBooks(long afterId, int limit, Set<BookField> fields) {
+        validatePageLimit(limit);
+        return ReplicaRoutingDataSource.readOnly(
+                () -> getBookPage(bookDAO.getAll(afterId, limit + 1), limit, fields));
+    }
+
+    /**
+     * Выгружает весь каталог: книги читаются курсором, а авторы, жанры и рейтинги
+     * догружаются порциями по EXPORT_CHUNK_SIZE книг, которые сразу передаются в chunkConsumer.
+     * Курсор требует транзакции, поэтому порции догружаются последовательно на её соединении.
+     * Транзакция ограничена exportTimeout: каждый запрос получает остаток срока как таймаут,
+     * а после срока следующий запрос не начинается, поэтому медленный клиент не держит соединение дольше.
+     */
+    public void exportAllBooks(Consumer<List<BookWithAverageRatingDTO>> chunkConsumer) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        transactionTemplate.setTimeout((int) Math.max(1, exportTimeout.toSeconds()));
+        transactionTemplate.executeWithoutResult(_ -> {
+            try (Stream<Book> books = bookDAO.streamAll()) {
+                List<Book> chunk = new ArrayList<>(EXPORT_CHUNK_SIZE);
+                Iterator<Book> iterator = books.iterator();
+                while (iterator.hasNext()) {
+                    chunk.add(iterator.next());
+                    if (chunk.size() == EXPORT_CHUNK_SIZE) {
+                        chunkConsumer.accept(hydrateBooks(chunk, BookField.ALL));
+                        chunk = new ArrayList<>(EXPORT_CHUNK_SIZE);
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    chunkConsumer.accept(hydrateBooks(chunk, BookField.ALL));
+                }
+            }
+        });
     }
 
+    @Transactional
     public Book updateBook(Book book, Long id) {
         validateBook(book);
         Book updatedBook = bookDAO.getBookById(id);
@@ -59,40 +151,50 @@ public class BookAssembler {
             bookDAO.updateBook(updatedBook);
 
             //Логика с добавлением и удалением связей книги и автора
-            Set<Author> oldSetAuthors = new HashSet<>(updatedBook.getAuthors());
-            Set<Author> newSetAuthors = new HashSet<>(book.getAuthors());
-
-            Set<Author> addedAuthors = new HashSet<>(newSetAuthors);
-            addedAuthors.removeAll(oldSetAuthors);
-            for (Author author : addedAuthors) {
-                bookDAO.saveBookAuthor(updatedBook.getId(), author.getId());
-                updatedBook.getAuthors().add(author);
+            Set<Long> oldAuthorIds = getAuthorIds(updatedBook.getAuthors());
+            Map<Long, Author> newAuthors = new LinkedHashMap<>();
+            for (Author author : book.getAuthors()) {
+                newAuthors.putIfAbsent(author.getId(), author);
             }
+            Set<Long> newAuthorIds = newAuthors.keySet();
 
-            Set<Author> removedAuthors = new HashSet<>(oldSetAuthors);
-            removedAuthors.removeAll(newSetAuthors);
-            for (Author author : removedAuthors) {
-                bookDAO.deleteBookAuthor(updatedBook.getId(), author.getId());
-                updatedBook.getAuthors().remove(author);
+            Set<Long> removedAuthorIds = new HashSet<>(oldAuthorIds);
+            removedAuthorIds.removeAll(newAuthorIds);
+            bookDAO.deleteBookAuthors(updatedBook.getId(), removedAuthorIds);
+            updatedBook.getAuthors().removeIf(author -> removedAuthorIds.contains(author.getId()));
+
+            Set<Long> addedAuthorIds = new HashSet<>(newAuthorIds);
+            addedAuthorIds.removeAll(oldAuthorIds);
+            bookDAO.saveBookAuthors(updatedBook.getId(), addedAuthorIds);
+            for (Author author : newAuthors.values()) {
+                if (addedAuthorIds.contains(author.getId())) {
+                    updatedBook.getAuthors().add(author);
+                }
             }
 
             //Логика с добавлением и удалением связей книги и жанра
-            Set<Genre> oldSetGenres = new HashSet<>(updatedBook.getGenres());
-            Set<Genre> newSetGenres = new HashSet<>(book.getGenres());
-
-            Set<Genre> addedGenres = new HashSet<>(newSetGenres);
-            addedGenres.removeAll(oldSetGenres);
-            for (Genre genre : addedGenres) {
-                bookDAO.saveBookGenre(updatedBook.getId(), genre.getId());
-                updatedBook.getGenres().add(genre);
+            Set<Long> oldGenreIds = getGenreIds(updatedBook.getGenres());
+            Map<Long, Genre> newGenres = new LinkedHashMap<>();
+            for (Genre genre : book.getGenres()) {
+                newGenres.putIfAbsent(genre.getId(), genre);
             }
+            Set<Long> newGenreIds = newGenres.keySet();
+
+            Set<Long> removedGenreIds = new HashSet<>(oldGenreIds);
+            removedGenreIds.removeAll(newGenreIds);
+            bookDAO.deleteBookGenres(updatedBook.getId(), removedGenreIds);
+            updatedBook.getGenres().removeIf(genre -> removedGenreIds.contains(genre.getId()));
 
-            Set<Genre> removedGenres = new HashSet<>(oldSetGenres);
-            removedGenres.removeAll(newSetGenres);
-            for (Genre genre : removedGenres) {
-                bookDAO.deleteBookGenre(updatedBook.getId(), genre.getId());
-                updatedBook.getGenres().remove(genre);
+            Set<Long> addedGenreIds = new HashSet<>(newGenreIds);
+            addedGenreIds.removeAll(oldGenreIds);
+            bookDAO.saveBookGenres(updatedBook.getId(), addedGenreIds);
+            for (Genre genre : newGenres.values()) {
+                if (addedGenreIds.contains(genre.getId())) {
+                    updatedBook.getGenres().add(genre);
+                }
             }
+            bookLeaderboard.refreshBook(updatedBook.getId());
+            bookCacheInvalidator.evictBook(updatedBook.getId());
 
             return updatedBook;
         } else {
@@ -100,15 +202,12 @@ public class BookAssembler {
         }
     }
 
+    @Transactional
     public Book saveBook(Book book) {
         validateBook(book);
         Book savedBook = bookDAO.saveBook(book);
-        for (Author author : savedBook.getAuthors()) {
-            bookDAO.saveBookAuthor(savedBook.getId(), author.getId());
-        }
-        for (Genre genre : savedBook.getGenres()) {
-            bookDAO.saveBookGenre(savedBook.getId(), genre.getId());
-        }
+        bookDAO.saveBookAuthors(savedBook.getId(), getAuthorIds(savedBook.getAuthors()));
+        bookDAO.saveBookGenres(savedBook.getId(), getGenreIds(savedBook.getGenres()));
         return savedBook;
     }
 
@@ -117,54 +216,140 @@ public class BookAssembler {
         if (resultBook == 0) {
             throw new NotFoundException(id);
         }
+        bookLeaderboard.deleteBook(id);
+        bookCacheInvalidator.evictBook(id);
+    }
+
+    public BookPageDTO getBooksByAuthorName(String authorName, long afterId, int limit, Set<BookField> fields) {
+        validatePageLimit(limit);
+        return ReplicaRoutingDataSource.readOnly(
+                () -> getBookPage(bookDAO.getBooksByAuthorName(authorName, afterId, limit + 1), limit, fields));
+    }
+
+    public BookPageDTO getBooksByAuthorId(Long authorId, long afterId, int limit, Set<BookField> fields) {
+        validatePageLimit(limit);
+        return ReplicaRoutingDataSource.readOnly(
+                () -> getBookPage(bookDAO.getBooksByAuthorId(authorId, afterId, limit + 1), limit, fields));
+    }
+
+    @SingleFlight("booksByGenre")
+    public BookPageDTO getBooksByGenreId(Long genreId, long afterId, int limit, Set<BookField> fields) {
+        validatePageLimit(limit);
+        return ReplicaRoutingDataSource.readOnly(
+                () -> getBookPage(bookDAO.getBooksByGenreId(genreId, afterId, limit + 1), limit, fields));
+    }
+
+    /**
+     * Формирует страницу из книг, запрошенных с запасом в одну запись:
+     * если лишняя запись пришла, то следующая страница существует.
+     */
+    private BookPageDTO getBookPage(List<Book> books, int limit, Set<BookField> fields) {
+        Long nextCursor = null;
+        if (books.size() > limit) {
+            books = books.subList(0, limit);
+            nextCursor = books.getLast().getId();
+        }
+        return new BookPageDTO(hydrateBooks(books, fields), nextCursor);
+    }
+
+    /**
+     * Авторы, жанры и оценки читаются параллельно не дольше hydrationTimeout, незапрошенные в fields не читаются.
+     */
+    List<BookWithAverageRatingDTO> hydrateBooks(List<Book> books, Set<BookField> fields) {
+        if (books.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Set<Long> bookIds = getBookIds(books);
+        //Параллельные запросы брали бы из пула ещё соединения, пока транзакция держит своё
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            fillBooksWithAuthors(books, fields.contains(BookField.AUTHORS)
+                    ? authorDAO.getAuthorsForBooks(bookIds) : List.of());
+            fillBooksWithGenres(books, fields.contains(BookField.GENRES)
+                    ? genreDAO.getGenresForBooks(bookIds) : List.of());
+            return fillListOfBookWithAverageRatingDTO(books, fields.contains(BookField.AVERAGE_RATING)
+                    ? bookReviewDAO.getRatingsForBooks(bookIds) : List.of());
+        }
+        long deadline = System.nanoTime() + hydrationTimeout.toNanos();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            Future<List<BookAuthorDTO>> authors = submitIfRequested(executor, fields.contains(BookField.AUTHORS),
+                    deadline, () -> authorDAO.getAuthorsForBooks(bookIds));
+            Future<List<BookGenreDTO>> genres = submitIfRequested(executor, fields.contains(BookField.GENRES),
+                    deadline, () -> genreDAO.getGenresForBooks(bookIds));
+            Future<List<BookRatingDTO>> ratings = submitIfRequested(executor, fields.contains(BookField.AVERAGE_RATING),
+                    deadline, () -> bookReviewDAO.getRatingsForBooks(bookIds));
+            fillBooksWithAuthors(books, getBeforeDeadline(authors, deadline));
+            fillBooksWithGenres(books, getBeforeDeadline(genres, deadline));
+            return fillListOfBookWithAverageRatingDTO(books, getBeforeDeadline(ratings, deadline));
+        } finally {
+            //Выполняющийся запрос JDBC не замечает прерывания, его дожидаемся, чтобы соединение вернулось в пул
+            executor.shutdownNow();
+            executor.close();
+        }
     }
 
-    public List<BookWithAverageRatingDTO> getBooksByAuthorName(String authorName) {
-        List<Book> books = bookDAO.getBooksByAuthorName(authorName);
-        fillBooksWithAuthors(books);
-        fillBooksWithGenres(books);
-        return fillListOfBookWithAverageRatingDTO(books);
+    private <T> Future<List<T>> submitIfRequested(ExecutorService executor, boolean requested, long deadline,
+                                                  Supplier<List<T>> query) {
+        if (!requested) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        return executor.submit(ReplicaRoutingDataSource.inheritReadOnly(
+                () -> DeadlineJdbcTemplate.withDeadline(deadline, query::get)));
     }
 
-    public List<BookWithAverageRatingDTO> getBooksByAuthorId(Long authorId) {
-        List<Book> books = bookDAO.getBooksByAuthorId(authorId);
-        fillBooksWithAuthors(books);
-        fillBooksWithGenres(books);
-        return fillListOfBookWithAverageRatingDTO(books);
+    private <T> T getBeforeDeadline(Future<T> future, long deadline) {
+        try {
+            return future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException(hydrationTimeout);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
     }
 
-    public List<BookWithAverageRatingDTO> getBooksByGenreId(Long genreId) {
-        List<Book> books = bookDAO.getBooksByGenreId(genreId);
-        fillBooksWithAuthors(books);
-        fillBooksWithGenres(books);
-        return fillListOfBookWithAverageRatingDTO(books);
+    private void validatePageLimit(int limit) throws IllegalArgumentException {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
     }
 
-    private @NonNull List<BookWithAverageRatingDTO> fillListOfBookWithAverageRatingDTO(List<Book> books) {
+    private @NonNull List<BookWithAverageRatingDTO> fillListOfBookWithAverageRatingDTO(List<Book> books,
+                                                                                      List<BookRatingDTO> bookRatingDTOS) {
+        Map<Long, BookRatingDTO> ratingIndex = new HashMap<>();
+        for (BookRatingDTO bookRatingDTO : bookRatingDTOS) {
+            ratingIndex.put(bookRatingDTO.getBookId(), bookRatingDTO);
+        }
         List<BookWithAverageRatingDTO> bookWithAverageRatingDTOs = new ArrayList<>();
         for (Book book : books) {
             BookWithAverageRatingDTO bookWithAverageRatingDTO = new BookWithAverageRatingDTO(book);
-            bookWithAverageRatingDTO.setAverageRating(getAverageRating(bookWithAverageRatingDTO.getId()));
+            bookWithAverageRatingDTO.setAverageRating(getAverageRating(ratingIndex.get(book.getId())));
             bookWithAverageRatingDTOs.add(bookWithAverageRatingDTO);
         }
         return bookWithAverageRatingDTOs;
     }
 
-    private Float getAverageRating(long bookId) {
-        List<BookReview> bookReviews = bookReviewDAO.getReviewByBookId(bookId);
-        int sum = 0;
-        for (BookReview bookReview : bookReviews) {
-            sum += bookReview.getRating();
+    private Float getAverageRating(BookRatingDTO bookRatingDTO) {
+        if (bookRatingDTO == null || bookRatingDTO.getReviewCount() == 0) {
+            return null;
         }
-        return bookReviews.isEmpty() ? null : (float) sum / bookReviews.size();
+        return (float) bookRatingDTO.getRatingSum() / bookRatingDTO.getReviewCount();
     }
 
     private void fillBooksWithAuthors(List<Book> books) {
+        fillBooksWithAuthors(books, authorDAO.getAuthorsForBooks(getBookIds(books)));
+    }
+
+    private void fillBooksWithAuthors(List<Book> books, List<BookAuthorDTO> bookAuthorDTOS) {
         Map<Long, Book> bookIndex = new HashMap<>();
         for (Book book : books) {
             bookIndex.put(book.getId(), book);
         }
-        List<BookAuthorDTO> bookAuthorDTOS = authorDAO.getAuthorsForBooks(bookIndex.keySet());
         for (BookAuthorDTO bookAuthorDTO : bookAuthorDTOS) {
             Long bookId = bookAuthorDTO.getBookId();
             Book book = bookIndex.get(bookId);
@@ -173,11 +358,14 @@ public class BookAssembler {
     }
 
     private void fillBooksWithGenres(List<Book> books) {
+        fillBooksWithGenres(books, genreDAO.getGenresForBooks(getBookIds(books)));
+    }
+
+    private void fillBooksWithGenres(List<Book> books, List<BookGenreDTO> bookGenreDTOS) {
         Map<Long, Book> bookIndex = new HashMap<>();
         for (Book book : books) {
             bookIndex.put(book.getId(), book);
         }
-        List<BookGenreDTO> bookGenreDTOS = genreDAO.getGenresForBooks(bookIndex.keySet());
         for (BookGenreDTO bookGenreDTO : bookGenreDTOS) {
             Long bookId = bookGenreDTO.getBookId();
             Book book = bookIndex.get(bookId);
@@ -185,6 +373,30 @@ public class BookAssembler {
         }
     }
 
+    private static Set<Long> getBookIds(Collection<Book> books) {
+        Set<Long> bookIds = new HashSet<>();
+        for (Book book : books) {
+            bookIds.add(book.getId());
+        }
+        return bookIds;
+    }
+
+    private static Set<Long> getAuthorIds(Collection<Author> authors) {
+        Set<Long> authorIds = new HashSet<>();
+        for (Author author : authors) {
+            authorIds.add(author.getId());
+        }
+        return authorIds;
+    }
+
+    private static Set<Long> getGenreIds(Collection<Genre> genres) {
+        Set<Long> genreIds = new HashSet<>();
+        for (Genre genre : genres) {
+            genreIds.add(genre.getId());
+        }
+        return genreIds;
+    }
+
     private void validateBook(Book book) throws IllegalArgumentException {
         if (book.getAuthors().isEmpty()) {
             throw new IllegalArgumentException("No authors");
@@ -192,19 +404,30 @@ public class BookAssembler {
         if (book.getGenres().isEmpty()) {
             throw new IllegalArgumentException("No genres");
         }
-        for (Author author : book.getAuthors()) {
-            if (authorDAO.getAuthorById(author.getId()) == null) {
-                throw new IllegalArgumentException("Bad author: " + author.getId() + " "
-                        + author.getAuthorName() +
-                        "\nYou need to create new author before updating book");
-            }
+        Set<Long> missingAuthorIds = authorDAO.getMissingAuthorIds(getAuthorIds(book.getAuthors()));
+        Set<Long> missingGenreIds = genreDAO.getMissingGenreIds(getGenreIds(book.getGenres()));
+
+        List<String> errors = new ArrayList<>();
+        if (!missingAuthorIds.isEmpty()) {
+            errors.add("Bad authors: " + missingAuthorIds +
+                    "\nYou need to create new authors before updating book");
         }
-        for (Genre genre : book.getGenres()) {
-            if (genreDAO.getGenreById(genre.getId()) == null) {
-                throw new IllegalArgumentException("Bad genre: " + genre.getId() + " "
-                        + genre.getGenreName() +
-                        "\nYou need to create new genre before updating book;");
-            }
+        if (!missingGenreIds.isEmpty()) {
+            errors.add("Bad genres: " + missingGenreIds +
+                    "\nYou need to create new genres before updating book;");
         }
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException(String.join("\n", errors));
+        }
+    }
+
+    private BookWithAverageRatingDTO getCachedBook(Long id, long version) {
+        Cache cache = cacheManager.getCache(CacheConfiguration.BOOKS_CACHE);
+        CachedBook cached = cache != null ? cache.get(id, CachedBook.class) : null;
+        return cached != null && cached.version() == version ? cached.book() : null;
+    }
+
+    //Книга из кэша общая для всех запросов и после сборки не изменяется
+    private record CachedBook(long version, BookWithAverageRatingDTO book) {
     }
 }
@@ -0,0 +1,103 @@
+package ru.mrhellko.library.assembler;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import ru.mrhellko.library.configuration.CacheConfiguration;
+import ru.mrhellko.library.dao.BookDAO;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Точечно удаляет книги из кэшей CacheConfiguration.BOOKS_CACHE и BOOK_JSON_CACHE, когда меняется что-то,
+ * из чего собрана книга: сама книга, имя её автора или название жанра, её отзывы.
+ * <p>
+ * Книги удаляются из кэша после коммита транзакции: если удалить раньше, параллельный запрос
+ * успеет положить в кэш книгу, прочитанную до коммита. После удаления увеличивается версия книги,
+ * поэтому запись, собранная по версии до изменения, не будет принята при чтении.
+ * Id книг автора и жанра читаются при вызове, поэтому при удалении автора или жанра
+ * очистку нужно запросить до удаления, в той же транзакции.
+ * <p>
+ * Справочники авторов и жанров тоже повторно очищаются после коммита. @CacheEvict в AuthorDAO и GenreDAO
+ * срабатывает сразу, чтобы транзакция читала свои изменения, но до коммита параллельный запрос
+ * может снова положить в кэш старую запись.
+ */
+@Service
+public class BookCacheInvalidator {
+    private static final int VERSION_STRIPES = 1024;
+
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private BookDAO bookDAO;
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    /**
+     * Версия хранится не для каждой книги, а для группы книг с одинаковым остатком id по VERSION_STRIPES:
+     * память не растёт с каталогом, изменение книги делает устаревшими и записи других книг группы.
+     */
+    public long getVersion(Long bookId) {
+        return versions.get(stripe(bookId));
+    }
+
+    public void evictBook(Long bookId) {
+        if (bookId != null) {
+            evictBooks(Set.of(bookId));
+        }
+    }
+
+    public void evictBooks(Collection<Long> bookIds) {
+        Set<Long> evictedIds = new HashSet<>(bookIds);
+        evictedIds.remove(null);
+        if (evictedIds.isEmpty()) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> {
+            evict(CacheConfiguration.BOOKS_CACHE, evictedIds);
+            evict(CacheConfiguration.BOOK_JSON_CACHE, evictedIds);
+            for (Long bookId : evictedIds) {
+                versions.incrementAndGet(stripe(bookId));
+            }
+        });
+    }
+
+    public void evictAuthor(Long authorId) {
+        TransactionCallbacks.afterCommit(() -> evict(CacheConfiguration.AUTHORS_CACHE, Set.of(authorId)));
+    }
+
+    /**
+     * Удаляет жанр из кэша жанров и очищает кэш списка всех жанров.
+     */
+    public void evictGenre(Long genreId) {
+        TransactionCallbacks.afterCommit(() -> {
+            evict(CacheConfiguration.GENRES_CACHE, Set.of(genreId));
+            Cache cache = cacheManager.getCache(CacheConfiguration.ALL_GENRES_CACHE);
+            if (cache != null) {
+                cache.clear();
+            }
+        });
+    }
+
+    public void evictBooksOfAuthor(Long authorId) {
+        evictBooks(bookDAO.getBookIdsByAuthorId(authorId));
+    }
+
+    public void evictBooksOfGenre(Long genreId) {
+        evictBooks(bookDAO.getBookIdsByGenreId(genreId));
+    }
+
+    private void evict(String cacheName, Set<Long> bookIds) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache != null) {
+            bookIds.forEach(cache::evict);
+        }
+    }
+
+    private static int stripe(Long bookId) {
+        return Math.floorMod(bookId, VERSION_STRIPES);
+    }
+}
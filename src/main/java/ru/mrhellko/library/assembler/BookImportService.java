@@ -0,0 +1,105 @@
+package ru.mrhellko.library.assembler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ru.mrhellko.library.Entity.Author;
+import ru.mrhellko.library.Entity.Book;
+import ru.mrhellko.library.Entity.Genre;
+import ru.mrhellko.library.dao.AuthorDAO;
+import ru.mrhellko.library.dao.BookDAO;
+import ru.mrhellko.library.dao.GenreDAO;
+import ru.mrhellko.library.dto.ImportResultDTO;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Импорт книг потоком из JSON-массива или NDJSON.
+ * <p>
+ * Книги читаются и сохраняются пачками по IMPORT_CHUNK_SIZE, поэтому в памяти никогда не лежит весь файл.
+ * Ссылки на авторов и жанры проверяются двумя запросами на пачку. Книги с ошибками, в том числе записи
+ * с полями неверного типа, пропускаются, остальные книги пачки сохраняются одной транзакцией.
+ * Если запись пачки не удалась, откатывается только эта пачка, импорт продолжается со следующей.
+ */
+@Service
+public class BookImportService {
+    public static final int IMPORT_CHUNK_SIZE = 1000;
+
+    @Autowired
+    private BookDAO bookDAO;
+    @Autowired
+    private AuthorDAO authorDAO;
+    @Autowired
+    private GenreDAO genreDAO;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    public ImportResultDTO importBooks(InputStream inputStream) throws IOException {
+        return ChunkedImport.importChunks(objectMapper.readerFor(Book.class), inputStream, IMPORT_CHUNK_SIZE,
+                this::validateBooks, bookDAO::saveBooks);
+    }
+
+    private List<String> validateBooks(List<Book> chunk) {
+        Set<Long> authorIds = new HashSet<>();
+        Set<Long> genreIds = new HashSet<>();
+        for (Book book : chunk) {
+            authorIds.addAll(getIds(book.getAuthors(), Author::getId));
+            genreIds.addAll(getIds(book.getGenres(), Genre::getId));
+        }
+        authorIds.remove(null);
+        genreIds.remove(null);
+        Set<Long> missingAuthorIds = authorDAO.getMissingAuthorIds(authorIds);
+        Set<Long> missingGenreIds = genreDAO.getMissingGenreIds(genreIds);
+
+        List<String> errors = new ArrayList<>(chunk.size());
+        for (Book book : chunk) {
+            errors.add(validateBook(book, missingAuthorIds, missingGenreIds));
+        }
+        return errors;
+    }
+
+    private String validateBook(Book book, Set<Long> missingAuthorIds, Set<Long> missingGenreIds) {
+        if (book.getBookName() == null) {
+            return "No book name";
+        }
+        if (book.getAuthors() == null || book.getAuthors().isEmpty()) {
+            return "No authors";
+        }
+        if (book.getGenres() == null || book.getGenres().isEmpty()) {
+            return "No genres";
+        }
+        Set<Long> badAuthorIds = getBadIds(getIds(book.getAuthors(), Author::getId), missingAuthorIds);
+        Set<Long> badGenreIds = getBadIds(getIds(book.getGenres(), Genre::getId), missingGenreIds);
+        List<String> errors = new ArrayList<>();
+        if (!badAuthorIds.isEmpty()) {
+            errors.add("Bad authors: " + badAuthorIds);
+        }
+        if (!badGenreIds.isEmpty()) {
+            errors.add("Bad genres: " + badGenreIds);
+        }
+        return errors.isEmpty() ? null : String.join("\n", errors);
+    }
+
+    private static <T> Set<Long> getIds(Collection<T> values, Function<T, Long> idGetter) {
+        Set<Long> ids = new LinkedHashSet<>();
+        if (values != null) {
+            for (T value : values) {
+                ids.add(value == null ? null : idGetter.apply(value));
+            }
+        }
+        return ids;
+    }
+
+    private static Set<Long> getBadIds(Set<Long> ids, Set<Long> missingIds) {
+        Set<Long> badIds = new LinkedHashSet<>();
+        for (Long id : ids) {
+            if (id == null || missingIds.contains(id)) {
+                badIds.add(id);
+            }
+        }
+        return badIds;
+    }
+}
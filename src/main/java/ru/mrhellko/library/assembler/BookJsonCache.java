@@ -0,0 +1,79 @@
+package ru.mrhellko.library.assembler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import ru.mrhellko.library.coalescing.SingleFlight;
+import ru.mrhellko.library.configuration.CacheConfiguration;
+import ru.mrhellko.library.dto.BookWithAverageRatingDTO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Готовый JSON-ответ GET /books/{id}, для больших книг ещё и сжатый gzip. Запись хранит версию книги
+ * из BookCacheInvalidator, прочитанную до сборки, и с устаревшей версией не используется.
+ */
+@Service
+public class BookJsonCache {
+    //Как server.compression.min-response-size по умолчанию
+    public static final int GZIP_MIN_SIZE = 2048;
+
+    @Autowired
+    private BookAssembler bookAssembler;
+    @Autowired
+    private BookCacheInvalidator bookCacheInvalidator;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private CacheManager cacheManager;
+
+    /**
+     * @param gzip сжатый json или null, если ответ меньше GZIP_MIN_SIZE
+     */
+    public record BookJson(long version, byte[] json, byte[] gzip) {
+    }
+
+    @SingleFlight("book")
+    public BookJson getBookJson(Long id) {
+        long version = bookCacheInvalidator.getVersion(id);
+        Cache cache = cacheManager.getCache(CacheConfiguration.BOOK_JSON_CACHE);
+        BookJson cached = cache != null ? cache.get(id, BookJson.class) : null;
+        if (cached != null && cached.version() == version) {
+            return cached;
+        }
+        BookWithAverageRatingDTO bookWithAverageRatingDTO = bookAssembler.getFullBookWithAverageRatingDTO(id);
+        if (bookWithAverageRatingDTO == null) {
+            return null;
+        }
+        byte[] json = toJson(bookWithAverageRatingDTO);
+        BookJson bookJson = new BookJson(version, json, json.length >= GZIP_MIN_SIZE ? gzip(json) : null);
+        if (cache != null && bookCacheInvalidator.getVersion(id) == version) {
+            cache.put(id, bookJson);
+        }
+        return bookJson;
+    }
+
+    private byte[] toJson(BookWithAverageRatingDTO bookWithAverageRatingDTO) {
+        try {
+            return objectMapper.writeValueAsBytes(bookWithAverageRatingDTO);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+            gzipOutputStream.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,220 @@
+package ru.mrhellko.library.assembler;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import ru.mrhellko.library.dao.BookDAO;
+import ru.mrhellko.library.dao.GenreDAO;
+import ru.mrhellko.library.dto.BookGenreRatingDTO;
+import ru.mrhellko.library.dto.BookRatingDTO;
+import ru.mrhellko.library.dto.TopBookDTO;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Первые CAPACITY книг каталога и запрошенных жанров в памяти, по сглаженной средней
+ * (minVotes * C + сумма оценок) / (minVotes + количество отзывов), где C - средняя оценка каталога при построении.
+ */
+@Service
+public class BookLeaderboard {
+    public static final int MAX_TOP_SIZE = 100;
+    //Запас сверх MAX_TOP_SIZE, чтобы рейтинг не перечитывался после каждой выбывшей книги
+    static final int CAPACITY = 2 * MAX_TOP_SIZE;
+    private static final double DEFAULT_MEAN_RATING = 5.5;
+    private static final Comparator<Entry> ORDER = Comparator.<Entry>comparingDouble(Entry::score).reversed()
+            .thenComparingLong(Entry::bookId);
+
+    @Autowired
+    private BookDAO bookDAO;
+    @Autowired
+    private GenreDAO genreDAO;
+    @Value("${library.books.leaderboard.min-votes:10}")
+    private int minVotes = 10;
+
+    //Рейтинги изменяются только под блокировкой this, снимки книг читаются без блокировки
+    private volatile Ranking overall = new Ranking();
+    private final Map<Long, Ranking> genres = new ConcurrentHashMap<>();
+    private double meanRating = DEFAULT_MEAN_RATING;
+
+    /**
+     * Первые k книг по всему каталогу, если genreId == null, иначе по жанру.
+     */
+    public List<TopBookDTO> getTop(Long genreId, int k) {
+        if (k < 1 || k > MAX_TOP_SIZE) {
+            throw new IllegalArgumentException("K must be between 1 and " + MAX_TOP_SIZE);
+        }
+        Ranking ranking = genreId == null ? overall : genres.get(genreId);
+        if (ranking == null || ranking.stale) {
+            ranking = reload(genreId);
+        }
+        List<TopBookDTO> top = new ArrayList<>(k);
+        for (Entry entry : ranking.entries) {
+            if (top.size() == k) {
+                break;
+            }
+            top.add(new TopBookDTO(entry.bookId(), entry.bookName(), entry.reviewCount(),
+                    (float) entry.ratingSum() / entry.reviewCount(), entry.score()));
+        }
+        return top;
+    }
+
+    @PostConstruct
+    public synchronized void rebuild() {
+        BookRatingDTO totals = bookDAO.getRatingTotals();
+        meanRating = totals.getReviewCount() > 0
+                ? (double) totals.getRatingSum() / totals.getReviewCount() : DEFAULT_MEAN_RATING;
+        genres.clear();
+        overall = load(null);
+    }
+
+    public void refreshBook(Long bookId) {
+        refreshBooks(Collections.singleton(bookId));
+    }
+
+    public void refreshBooks(Collection<Long> bookIds) {
+        Set<Long> changedBookIds = new HashSet<>(bookIds);
+        changedBookIds.remove(null);
+        if (!changedBookIds.isEmpty()) {
+            TransactionCallbacks.afterCommit(() -> reloadBooks(changedBookIds));
+        }
+    }
+
+    public void deleteBook(Long bookId) {
+        TransactionCallbacks.afterCommit(() -> removeBook(bookId));
+    }
+
+    public void deleteGenre(Long genreId) {
+        TransactionCallbacks.afterCommit(() -> removeGenre(genreId));
+    }
+
+    private synchronized Ranking reload(Long genreId) {
+        Ranking ranking = genreId == null ? overall : genres.get(genreId);
+        if (ranking != null && !ranking.stale) {
+            return ranking;
+        }
+        ranking = load(genreId);
+        if (genreId == null) {
+            overall = ranking;
+        } else if (!ranking.entries.isEmpty() || genreDAO.getGenreById(genreId) != null) {
+            //Рейтинги несуществующих жанров не хранятся, иначе такие запросы заполняли бы память
+            genres.put(genreId, ranking);
+        } else {
+            genres.remove(genreId);
+        }
+        return ranking;
+    }
+
+    private Ranking load(Long genreId) {
+        List<BookGenreRatingDTO> bookGenreRatingDTOS =
+                bookDAO.getTopBookGenreRatings(genreId, minVotes, meanRating, CAPACITY + 1);
+        Ranking ranking = new Ranking();
+        ranking.complete = bookGenreRatingDTOS.size() <= CAPACITY;
+        for (BookGenreRatingDTO bookGenreRatingDTO : bookGenreRatingDTOS) {
+            if (ranking.byBookId.size() == CAPACITY) {
+                break;
+            }
+            Entry entry = toEntry(bookGenreRatingDTO);
+            ranking.sorted.add(entry);
+            ranking.byBookId.put(entry.bookId(), entry);
+        }
+        ranking.publish();
+        return ranking;
+    }
+
+    //Под блокировкой даже запоздавшая обработка раннего коммита читает последнее состояние книги
+    private synchronized void reloadBooks(Set<Long> bookIds) {
+        Map<Long, BookGenreRatingDTO> found = new HashMap<>();
+        try {
+            for (BookGenreRatingDTO bookGenreRatingDTO : bookDAO.getBookGenreRatingsByIds(bookIds)) {
+                found.put(bookGenreRatingDTO.getBookId(), bookGenreRatingDTO);
+            }
+        } catch (DataAccessException e) {
+            //Изменение уже закоммичено, рейтинги перечитаются при следующем запросе
+            overall.stale = true;
+            genres.clear();
+            return;
+        }
+        for (Long bookId : bookIds) {
+            BookGenreRatingDTO bookGenreRatingDTO = found.get(bookId);
+            if (bookGenreRatingDTO == null || bookGenreRatingDTO.getReviewCount() <= 0) {
+                removeBook(bookId);
+                continue;
+            }
+            Entry entry = toEntry(bookGenreRatingDTO);
+            overall.put(entry);
+            Set<Long> genreIds = new HashSet<>(bookGenreRatingDTO.getGenreIds());
+            for (Map.Entry<Long, Ranking> genre : genres.entrySet()) {
+                if (genreIds.contains(genre.getKey())) {
+                    genre.getValue().put(entry);
+                } else {
+                    genre.getValue().remove(bookId);
+                }
+            }
+        }
+    }
+
+    private synchronized void removeBook(Long bookId) {
+        overall.remove(bookId);
+        for (Ranking ranking : genres.values()) {
+            ranking.remove(bookId);
+        }
+    }
+
+    private synchronized void removeGenre(Long genreId) {
+        genres.remove(genreId);
+    }
+
+    private Entry toEntry(BookGenreRatingDTO bookGenreRatingDTO) {
+        long reviewCount = bookGenreRatingDTO.getReviewCount();
+        long ratingSum = bookGenreRatingDTO.getRatingSum();
+        double score = (minVotes * meanRating + ratingSum) / (minVotes + reviewCount);
+        return new Entry(bookGenreRatingDTO.getBookId(), bookGenreRatingDTO.getBookName(), reviewCount, ratingSum, score);
+    }
+
+    private record Entry(long bookId, String bookName, long reviewCount, long ratingSum, double score) {
+    }
+
+    //Если complete == false, в БД есть книги ниже последней книги набора
+    private static class Ranking {
+        private final NavigableSet<Entry> sorted = new TreeSet<>(ORDER);
+        private final Map<Long, Entry> byBookId = new HashMap<>();
+        private boolean complete = true;
+        private volatile boolean stale;
+        //Снимок sorted для чтения без блокировки, заменяется целиком после каждого изменения
+        private volatile List<Entry> entries = List.of();
+
+        private void put(Entry entry) {
+            Entry previous = byBookId.remove(entry.bookId());
+            if (previous != null) {
+                sorted.remove(previous);
+            }
+            if (complete || (!sorted.isEmpty() && ORDER.compare(entry, sorted.last()) < 0)) {
+                sorted.add(entry);
+                byBookId.put(entry.bookId(), entry);
+            }
+            if (sorted.size() > CAPACITY) {
+                byBookId.remove(sorted.pollLast().bookId());
+                complete = false;
+            }
+            publish();
+        }
+
+        private void remove(long bookId) {
+            Entry entry = byBookId.remove(bookId);
+            if (entry != null) {
+                sorted.remove(entry);
+                publish();
+            }
+        }
+
+        private void publish() {
+            entries = List.copyOf(sorted);
+            if (!complete && sorted.size() < MAX_TOP_SIZE) {
+                stale = true;
+            }
+        }
+    }
+}
@@ -2,37 +2,74 @@ package ru.mrhellko.library.assembler;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.mrhellko.library.Entity.BookReview;
+import ru.mrhellko.library.coalescing.SingleFlight;
 import ru.mrhellko.library.dao.BookReviewDAO;
+import ru.mrhellko.library.dto.BookRatingDistributionDTO;
 import ru.mrhellko.library.dto.BookReviewByBookIdDTO;
 import ru.mrhellko.library.dto.BookReviewByReviewerNameDTO;
+import ru.mrhellko.library.dto.BookReviewPageDTO;
 import ru.mrhellko.library.exception.NotFoundException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 @Service
 public class BookReviewAssembler {
+    public static final int MAX_PAGE_SIZE = 500;
+
     @Autowired
     private BookReviewDAO bookReviewDAO;
+    @Autowired
+    private BookLeaderboard bookLeaderboard;
+    @Autowired
+    private BookCacheInvalidator bookCacheInvalidator;
 
-    public List<BookReviewByBookIdDTO> getReviewByBookId(Long bookId) {
-        List<BookReview> bookReviews = bookReviewDAO.getReviewByBookId(bookId);
+    /**
+     * Страница отзывов книги от новых к старым. Отзывы запрашиваются с запасом в одну запись:
+     * если лишняя запись пришла, то следующая страница существует.
+     */
+    @SingleFlight("reviewsByBook")
+    @Transactional(readOnly = true)
+    public BookReviewPageDTO getReviewByBookId(Long bookId, long beforeId, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        List<BookReview> bookReviews = bookReviewDAO.getReviewByBookId(bookId, beforeId, limit + 1);
+        Long nextCursor = null;
+        if (bookReviews.size() > limit) {
+            bookReviews = bookReviews.subList(0, limit);
+            nextCursor = bookReviews.getLast().getId();
+        }
         List<BookReviewByBookIdDTO> bookReviewByBookIdDTOS = new ArrayList<>();
         for (BookReview bookReview : bookReviews) {
             BookReviewByBookIdDTO bookReviewByBookIdDTO = new BookReviewByBookIdDTO(bookReview);
             bookReviewByBookIdDTOS.add(bookReviewByBookIdDTO);
         }
-        return bookReviewByBookIdDTOS;
+        return new BookReviewPageDTO(bookReviewByBookIdDTOS, nextCursor);
+    }
+
+    @Transactional(readOnly = true)
+    public BookRatingDistributionDTO getRatingDistribution(Long bookId) {
+        return bookReviewDAO.getRatingDistribution(bookId);
     }
 
+    @Transactional(readOnly = true)
     public List<BookReviewByReviewerNameDTO> getReviewByReviewerName(String reviewerName) {
         return bookReviewDAO.getReviewByReviewerName(reviewerName);
     }
 
+    /**
+     * Прежняя книга отзыва читается под блокировкой в той же транзакции, что и изменение,
+     * иначе параллельное изменение отзыва могло бы подменить её между чтением и записью.
+     */
+    @Transactional
     public BookReview updateBookReview(BookReview bookReview, Long id) {
-        BookReview updatedBookReview = bookReviewDAO.getReviewById(id);
+        BookReview updatedBookReview = bookReviewDAO.getReviewForUpdate(id);
         if (updatedBookReview != null) {
+            Long oldBookId = updatedBookReview.getBookId();
             updatedBookReview.setId(id);
             updatedBookReview.setBookId(bookReview.getBookId());
             updatedBookReview.setRating(bookReview.getRating());
@@ -40,6 +77,8 @@ public class BookReviewAssembler {
             updatedBookReview.setReviewText(bookReview.getReviewText());
 
             bookReviewDAO.updateBookReview(updatedBookReview);
+            bookLeaderboard.refreshBooks(Arrays.asList(oldBookId, updatedBookReview.getBookId()));
+            bookCacheInvalidator.evictBooks(Arrays.asList(oldBookId, updatedBookReview.getBookId()));
 
             return updatedBookReview;
         } else {
@@ -48,14 +87,23 @@ public class BookReviewAssembler {
     }
 
     public BookReview saveBookReview(BookReview bookReview) {
-        return bookReviewDAO.saveBookReview(bookReview);
+        BookReview savedBookReview = bookReviewDAO.saveBookReview(bookReview);
+        bookLeaderboard.refreshBook(savedBookReview.getBookId());
+        bookCacheInvalidator.evictBook(savedBookReview.getBookId());
+        return savedBookReview;
     }
 
+    @Transactional
     public void deleteBookReviewById(Long id) {
+        BookReview deletedBookReview = bookReviewDAO.getReviewForUpdate(id);
         int result = bookReviewDAO.deleteBookReviewById(id);
         if (result == 0) {
             throw new NotFoundException(id);
         }
+        if (deletedBookReview != null) {
+            bookLeaderboard.refreshBook(deletedBookReview.getBookId());
+            bookCacheInvalidator.evictBook(deletedBookReview.getBookId());
+        }
     }
 
 }
@@ -0,0 +1,104 @@
+package ru.mrhellko.library.assembler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ru.mrhellko.library.Entity.BookReview;
+import ru.mrhellko.library.dao.BookDAO;
+import ru.mrhellko.library.dao.BookReviewDAO;
+import ru.mrhellko.library.dto.ImportResultDTO;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Импорт отзывов потоком из NDJSON (или JSON-массива) и CSV с заголовком bookId,rating,reviewerName,reviewText.
+ * <p>
+ * Следующая пачка читается из запроса только после записи предыдущей, поэтому быстрый клиент
+ * упирается в скорость записи в БД, а не в память. Существование книг проверяется одним запросом на пачку,
+ * отзывы пачки и изменения сводки оценок пишутся одной транзакцией. Запись с полем неверного типа
+ * отклоняется, импорт продолжается со следующей записи; останавливает импорт только повреждённый поток.
+ */
+@Service
+public class BookReviewImportService {
+    public static final int IMPORT_CHUNK_SIZE = 5000;
+    private static final int MAX_RATING = 10;
+    private static final int MAX_REVIEWER_NAME_LENGTH = 16;
+    private static final CsvMapper CSV_MAPPER = new CsvMapper();
+
+    @Autowired
+    private BookDAO bookDAO;
+    @Autowired
+    private BookReviewDAO bookReviewDAO;
+    @Autowired
+    private BookLeaderboard bookLeaderboard;
+    @Autowired
+    private BookCacheInvalidator bookCacheInvalidator;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    public ImportResultDTO importReviews(InputStream inputStream) throws IOException {
+        return importReviews(objectMapper.readerFor(BookReview.class), inputStream);
+    }
+
+    public ImportResultDTO importReviewsCsv(InputStream inputStream) throws IOException {
+        return importReviews(CSV_MAPPER.readerFor(BookReview.class).with(CsvSchema.emptySchema().withHeader()),
+                inputStream);
+    }
+
+    private ImportResultDTO importReviews(ObjectReader reader, InputStream inputStream) throws IOException {
+        return ChunkedImport.importChunks(reader, inputStream, IMPORT_CHUNK_SIZE,
+                this::validateReviews, this::saveReviews);
+    }
+
+    private List<String> validateReviews(List<BookReview> chunk) {
+        Set<Long> bookIds = getBookIds(chunk);
+        Set<Long> missingBookIds = bookDAO.getMissingBookIds(bookIds);
+
+        List<String> errors = new ArrayList<>(chunk.size());
+        for (BookReview bookReview : chunk) {
+            errors.add(validateReview(bookReview, missingBookIds));
+        }
+        return errors;
+    }
+
+    private void saveReviews(List<BookReview> bookReviews) {
+        Set<Long> bookIds = getBookIds(bookReviews);
+        bookReviewDAO.saveBookReviews(bookReviews);
+        bookLeaderboard.refreshBooks(bookIds);
+        bookCacheInvalidator.evictBooks(bookIds);
+    }
+
+    private String validateReview(BookReview bookReview, Set<Long> missingBookIds) {
+        if (bookReview.getBookId() == null) {
+            return "No book id";
+        }
+        if (missingBookIds.contains(bookReview.getBookId())) {
+            return "Bad book: " + bookReview.getBookId();
+        }
+        if (bookReview.getRating() == null || bookReview.getRating() < 1 || bookReview.getRating() > MAX_RATING) {
+            return "Rating must be between 1 and " + MAX_RATING;
+        }
+        if (bookReview.getReviewerName() != null && bookReview.getReviewerName().length() > MAX_REVIEWER_NAME_LENGTH) {
+            return "Reviewer name is longer than " + MAX_REVIEWER_NAME_LENGTH;
+        }
+        return null;
+    }
+
+    private static Set<Long> getBookIds(List<BookReview> bookReviews) {
+        Set<Long> bookIds = new HashSet<>();
+        for (BookReview bookReview : bookReviews) {
+            if (bookReview.getBookId() != null) {
+                bookIds.add(bookReview.getBookId());
+            }
+        }
+        return bookIds;
+    }
+}
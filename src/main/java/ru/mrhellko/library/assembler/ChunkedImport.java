@@ -0,0 +1,100 @@
+package ru.mrhellko.library.assembler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.dao.DataAccessException;
+import ru.mrhellko.library.dto.ImportErrorDTO;
+import ru.mrhellko.library.dto.ImportResultDTO;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Потоковый импорт пачками: следующая пачка читается только после записи предыдущей.
+ */
+final class ChunkedImport {
+    static final int MAX_REPORTED_ERRORS = 100;
+
+    private ChunkedImport() {
+    }
+
+    /**
+     * @param validator возвращает ошибки записей пачки в том же порядке, null для корректной записи
+     */
+    static <T> ImportResultDTO importChunks(ObjectReader reader, InputStream inputStream, int chunkSize,
+                                            Function<List<T>, List<String>> validator, Consumer<List<T>> saver)
+            throws IOException {
+        ImportResultDTO result = new ImportResultDTO();
+        List<T> chunk = new ArrayList<>(chunkSize);
+        List<Long> chunkRecords = new ArrayList<>(chunkSize);
+        int chunkNumber = 0;
+        long record = 0;
+        try (MappingIterator<T> iterator = reader.readValues(inputStream)) {
+            while (iterator.hasNextValue()) {
+                try {
+                    chunk.add(iterator.nextValue());
+                    chunkRecords.add(record);
+                } catch (JsonMappingException e) {
+                    //Запись разобрана, но не подходит к типу: MappingIterator пропустит её остаток, импорт продолжается
+                    addError(result, new ImportErrorDTO(chunkNumber, record, "Bad record: " + e.getOriginalMessage()));
+                    result.setRejected(result.getRejected() + 1);
+                }
+                record++;
+                if (chunk.size() == chunkSize) {
+                    importChunk(chunk, chunkRecords, chunkNumber++, result, validator, saver);
+                    chunk.clear();
+                    chunkRecords.clear();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            //После ошибки разбора позиция в потоке не определена, поэтому импорт останавливается
+            addError(result, new ImportErrorDTO(chunkNumber, record, "Malformed input: " + e.getOriginalMessage()));
+            result.setRejected(result.getRejected() + 1);
+        }
+        if (!chunk.isEmpty()) {
+            importChunk(chunk, chunkRecords, chunkNumber, result, validator, saver);
+        }
+        return result;
+    }
+
+    /**
+     * @param chunkRecords номера записей пачки во входных данных: записи, отклонённые при чтении, в пачку не попадают
+     */
+    private static <T> void importChunk(List<T> chunk, List<Long> chunkRecords, int chunkNumber, ImportResultDTO result,
+                                        Function<List<T>, List<String>> validator, Consumer<List<T>> saver) {
+        List<String> errors = validator.apply(chunk);
+        List<T> validRecords = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            String error = errors.get(i);
+            if (error == null) {
+                validRecords.add(chunk.get(i));
+            } else {
+                addError(result, new ImportErrorDTO(chunkNumber, chunkRecords.get(i), error));
+                result.setRejected(result.getRejected() + 1);
+            }
+        }
+        if (validRecords.isEmpty()) {
+            return;
+        }
+        try {
+            saver.accept(validRecords);
+            result.setImported(result.getImported() + validRecords.size());
+        } catch (DataAccessException e) {
+            String message = "Chunk is not saved: " + e.getMostSpecificCause().getMessage();
+            addError(result, new ImportErrorDTO(chunkNumber, null, message));
+            result.setRejected(result.getRejected() + validRecords.size());
+        }
+    }
+
+    private static void addError(ImportResultDTO result, ImportErrorDTO error) {
+        if (result.getErrors().size() < MAX_REPORTED_ERRORS) {
+            result.getErrors().add(error);
+        }
+    }
+}
@@ -2,32 +2,51 @@ package ru.mrhellko.library.assembler;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.mrhellko.library.Entity.Genre;
 import ru.mrhellko.library.dao.GenreDAO;
 import ru.mrhellko.library.exception.NotFoundException;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 @Service
 public class GenreService {
     @Autowired
     private GenreDAO genreDAO;
+    @Autowired
+    private BookCacheInvalidator bookCacheInvalidator;
+    @Autowired
+    private BookLeaderboard bookLeaderboard;
 
     public List<Genre> getAllGenres() {
-        return genreDAO.getAllGenres();
+        return copyGenres(genreDAO.getAllGenres());
     }
 
     public Genre getGenreById(Long id) {
-        return genreDAO.getGenreById(id);
+        Genre genre = genreDAO.getGenreById(id);
+        return genre == null ? null : copyGenre(genre);
     }
 
+    /**
+     * Жанры в порядке ids. Справочник жанров небольшой и целиком лежит в кэше,
+     * поэтому жанры выбираются из него без запроса к БД.
+     */
+    public List<Genre> getGenresByIds(List<Long> ids) {
+        Set<Long> uniqueIds = BatchIds.validate(ids);
+        return copyGenres(BatchIds.orderByIds(uniqueIds, genreDAO.getAllGenres(), Genre::getId));
+    }
+
+    @Transactional
     public Genre updateGenre(Genre genre, Long id) {
-        Genre updatedGenre = genreDAO.getGenreById(id);
-        if (updatedGenre != null) {
-            updatedGenre.setId(id);
-            updatedGenre.setGenreName(genre.getGenreName());
+        //Жанр из DAO может лежать в кэше, поэтому изменения собираются в новом объекте
+        if (genreDAO.getGenreById(id) != null) {
+            Genre updatedGenre = new Genre(id, genre.getGenreName());
 
             genreDAO.updateGenre(updatedGenre);
+            bookCacheInvalidator.evictGenre(id);
+            bookCacheInvalidator.evictBooksOfGenre(id);
             return updatedGenre;
         } else {
             return null;
@@ -35,13 +54,36 @@ public class GenreService {
     }
 
     public Genre saveGenre(Genre genre) {
-        return genreDAO.saveGenre(genre);
+        Genre savedGenre = genreDAO.saveGenre(genre);
+        bookCacheInvalidator.evictGenre(savedGenre.getId());
+        return savedGenre;
     }
 
+    /**
+     * Связи с книгами удаляются вместе с записью, поэтому книги для очистки кэша находятся до удаления,
+     * а из кэша удаляются после коммита, как и сам жанр.
+     */
+    @Transactional
     public void deleteGenre(Long id) {
+        bookCacheInvalidator.evictBooksOfGenre(id);
         int resultGenre = genreDAO.deleteGenreById(id);
         if (resultGenre == 0) {
             throw new NotFoundException(id);
         }
+        bookCacheInvalidator.evictGenre(id);
+        bookLeaderboard.deleteGenre(id);
+    }
+
+    //Жанры из кэша общие для всех запросов, наружу отдаются копии
+    private static List<Genre> copyGenres(List<Genre> genres) {
+        List<Genre> copies = new ArrayList<>(genres.size());
+        for (Genre genre : genres) {
+            copies.add(copyGenre(genre));
+        }
+        return copies;
+    }
+
+    private static Genre copyGenre(Genre genre) {
+        return new Genre(genre.getId(), genre.getGenreName());
     }
 }
@@ -0,0 +1,28 @@
+package ru.mrhellko.library.assembler;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Изменения состояния в памяти (рейтинг книг, кэши), которые должны следовать за записью в БД.
+ */
+final class TransactionCallbacks {
+    private TransactionCallbacks() {
+    }
+
+    /**
+     * Внутри транзакции action выполняется после коммита и не выполняется при откате, вне транзакции - сразу.
+     */
+    static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
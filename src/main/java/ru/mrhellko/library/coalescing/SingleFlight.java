@@ -0,0 +1,16 @@
+package ru.mrhellko.library.coalescing;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Одновременные вызовы с равными аргументами выполняются один раз, результат общий и не должен изменяться.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SingleFlight {
+    //Тег метрик, уникальный среди методов с SingleFlight
+    String value();
+}
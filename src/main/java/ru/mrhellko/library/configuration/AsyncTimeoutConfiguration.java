@@ -0,0 +1,35 @@
+package ru.mrhellko.library.configuration;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+/**
+ * Таймаут асинхронной обработки для отдельного запроса. StreamingResponseBody не позволяет задать
+ * свой таймаут, поэтому обработчик кладёт Duration в атрибут запроса TIMEOUT_ATTRIBUTE, и он применяется
+ * перед началом асинхронной обработки. Остальные асинхронные запросы получают таймаут по умолчанию.
+ */
+@Configuration
+public class AsyncTimeoutConfiguration implements WebMvcConfigurer {
+    public static final String TIMEOUT_ATTRIBUTE = AsyncTimeoutConfiguration.class.getName() + ".timeout";
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.registerCallableInterceptors(new CallableProcessingInterceptor() {
+            @Override
+            public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+                if (request instanceof AsyncWebRequest asyncWebRequest
+                        && request.getAttribute(TIMEOUT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof Duration timeout) {
+                    asyncWebRequest.setTimeout(timeout.toMillis());
+                }
+            }
+        });
+    }
+}
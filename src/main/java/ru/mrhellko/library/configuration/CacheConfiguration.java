@@ -0,0 +1,18 @@
+package ru.mrhellko.library.configuration;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Кэши справочников и собранных книг. Размер, время жизни и сбор статистики задаются в spring.cache.caffeine.spec,
+ * счётчики попаданий и промахов публикуются через Actuator.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfiguration {
+    public static final String AUTHORS_CACHE = "authors";
+    public static final String GENRES_CACHE = "genres";
+    public static final String ALL_GENRES_CACHE = "allGenres";
+    public static final String BOOKS_CACHE = "books";
+    public static final String BOOK_JSON_CACHE = "bookJson";
+}
@@ -0,0 +1,17 @@
+package ru.mrhellko.library.configuration;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.mrhellko.library.dao.DeadlineJdbcTemplate;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class JdbcConfiguration {
+
+    @Bean
+    public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+        return new DeadlineJdbcTemplate(dataSource);
+    }
+}
@@ -0,0 +1,35 @@
+package ru.mrhellko.library.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("library.limiter")
+public class LimiterProperties {
+    private boolean enabled = true;
+    //GET, HEAD, OPTIONS, остальные методы считаются записью
+    private Limit read = new Limit(20, 2, 200, Duration.ofMillis(500));
+    private Limit write = new Limit(10, 1, 50, Duration.ofSeconds(1));
+    private Duration retryAfter = Duration.ofSeconds(1);
+
+    @Data
+    public static class Limit {
+        private int initialLimit;
+        private int minLimit;
+        private int maxLimit;
+        //Запрос дольше этого срока уменьшает лимит
+        private Duration latencyThreshold;
+
+        public Limit() {
+        }
+
+        public Limit(int initialLimit, int minLimit, int maxLimit, Duration latencyThreshold) {
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.latencyThreshold = latencyThreshold;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package ru.mrhellko.library.configuration;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Соединения read-only транзакций и чтений, обёрнутых в {@link #readOnly}, выдаются репликами по кругу,
+ * все остальные - основной БД.
+ * <p>
+ * Реплика выбирается в момент получения соединения, поэтому источник должен быть обёрнут
+ * в LazyConnectionDataSourceProxy: физическое соединение берётся при первом запросе,
+ * когда транзакция уже помечена как read-only.
+ * <p>
+ * Реплики проверяются раз в healthCheckInterval через Connection.isValid. Реплика, которая не прошла проверку
+ * или не выдала соединение, пропускается до следующей успешной проверки. Если доступных реплик нет,
+ * чтение идёт в основную БД.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements InitializingBean, AutoCloseable {
+    private static final ScopedValue<Boolean> READ_ONLY = ScopedValue.newInstance();
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+    private final Duration healthCheckInterval;
+    private final Duration healthCheckTimeout;
+    private final AtomicIntegerArray healthy;
+    private final AtomicInteger next = new AtomicInteger();
+    private ScheduledExecutorService healthChecker;
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas,
+                                    Duration healthCheckInterval, Duration healthCheckTimeout) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.healthCheckInterval = healthCheckInterval;
+        this.healthCheckTimeout = healthCheckTimeout;
+        this.healthy = new AtomicIntegerArray(this.replicas.size());
+        for (int i = 0; i < this.replicas.size(); i++) {
+            healthy.set(i, 1);
+        }
+    }
+
+    /**
+     * Чтение без транзакции, запросы которого идут в реплику. Каждый запрос берёт соединение из пула
+     * только на время своего выполнения, поэтому чтение с параллельными запросами в других потоках
+     * не держит соединение, пока ждёт их.
+     */
+    public static <T, X extends Throwable> T readOnly(ScopedValue.CallableOp<? extends T, X> read) throws X {
+        return ScopedValue.where(READ_ONLY, true).call(read);
+    }
+
+    /**
+     * Запросы из других потоков не видят транзакцию вызывающего потока. Обёрнутая задача читает из реплики,
+     * если вызывающий поток сейчас читает из реплики.
+     */
+    public static <T> Callable<T> inheritReadOnly(Callable<T> task) {
+        if (!isReadOnly()) {
+            return task;
+        }
+        return () -> ScopedValue.where(READ_ONLY, true).call(task::call);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (replicas.isEmpty()) {
+            return;
+        }
+        healthChecker = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("replica-health-check").factory());
+        long intervalMillis = healthCheckInterval.toMillis();
+        healthChecker.scheduleWithFixedDelay(this::checkReplicas, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (isReadOnly()) {
+            for (int attempt = 0; attempt < replicas.size(); attempt++) {
+                int replica = nextHealthyReplica();
+                if (replica < 0) {
+                    break;
+                }
+                try {
+                    return replicas.get(replica).getConnection();
+                } catch (SQLException e) {
+                    healthy.set(replica, 0);
+                }
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    /**
+     * Проверка всех реплик, по расписанию вызывается из afterPropertiesSet.
+     */
+    public void checkReplicas() {
+        for (int i = 0; i < replicas.size(); i++) {
+            healthy.set(i, isValid(replicas.get(i)) ? 1 : 0);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        for (DataSource replica : replicas) {
+            if (replica instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private static boolean isReadOnly() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() || READ_ONLY.orElse(false);
+    }
+
+    private int nextHealthyReplica() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            int replica = (start + i) % size;
+            if (healthy.get(replica) == 1) {
+                return replica;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isValid(DataSource replica) {
+        try (Connection connection = replica.getConnection()) {
+            return connection.isValid((int) Math.max(1, healthCheckTimeout.toSeconds()));
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+}
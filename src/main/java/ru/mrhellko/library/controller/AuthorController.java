@@ -8,12 +8,22 @@ import ru.mrhellko.library.Entity.Author;
 import ru.mrhellko.library.assembler.AuthorService;
 import ru.mrhellko.library.exception.NotFoundException;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/authors")
 public class AuthorController {
     @Autowired
     private AuthorService authorService;
 
+    /**
+     * Несколько авторов за один запрос: GET /authors?ids=1,2,3. Авторы идут в порядке ids, ненайденные пропускаются.
+     */
+    @GetMapping(params = "ids")
+    public ResponseEntity<List<Author>> getAuthorsByIds(@RequestParam(value = "ids") List<Long> ids) {
+        return new ResponseEntity<>(authorService.getAuthorsByIds(ids), HttpStatus.OK);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Author> getAuthorById(@PathVariable Long id) {
         Author author = authorService.getAuthorById(id);
@@ -1,41 +1,127 @@
 package ru.mrhellko.library.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.mrhellko.library.Entity.Book;
 import ru.mrhellko.library.assembler.BookAssembler;
+import ru.mrhellko.library.assembler.BookImportService;
+import ru.mrhellko.library.assembler.BookJsonCache;
+import ru.mrhellko.library.assembler.BookLeaderboard;
+import ru.mrhellko.library.configuration.AsyncTimeoutConfiguration;
+import ru.mrhellko.library.dto.BookField;
+import ru.mrhellko.library.dto.BookPageDTO;
 import ru.mrhellko.library.dto.BookWithAverageRatingDTO;
+import ru.mrhellko.library.dto.ImportResultDTO;
+import ru.mrhellko.library.dto.TopBookDTO;
 import ru.mrhellko.library.exception.NotFoundException;
+import ru.mrhellko.library.limiter.ConcurrencyLimitFilter;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/books")
 public class BookController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String DEFAULT_PAGE_SIZE = "50";
+    private static final String DEFAULT_TOP_SIZE = "10";
+    private static final String GZIP_ENCODING = "gzip";
 
     @Autowired
     private BookAssembler bookAssembler;
+    @Autowired
+    private BookImportService bookImportService;
+    @Autowired
+    private BookLeaderboard bookLeaderboard;
+    @Autowired
+    private BookJsonCache bookJsonCache;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Value("${library.books.export-timeout:30m}")
+    private Duration exportTimeout = Duration.ofMinutes(30);
 
+    /**
+     * Параметр fields во всех списках книг и в GET /books/{id} ограничивает поля ответа, например fields=id,bookName.
+     * Авторы, жанры и средняя оценка, которых нет в fields, не читаются из БД.
+     */
     @GetMapping("/")
-    public ResponseEntity<List<BookWithAverageRatingDTO>> getAll() {
-        List<BookWithAverageRatingDTO> bookWithAverageRatingDTOs = bookAssembler.getFullAllBooks();
-        if (!bookWithAverageRatingDTOs.isEmpty()) {
-            return new ResponseEntity<>(bookWithAverageRatingDTOs, HttpStatus.OK);
-        } else {
-            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
-        }
+    public ResponseEntity<MappingJacksonValue> getAll(
+            @RequestParam(value = "after", defaultValue = "0") Long after,
+            @RequestParam(value = "limit", defaultValue = DEFAULT_PAGE_SIZE) Integer limit,
+            @RequestParam(value = "fields", required = false) String fields) {
+        Set<BookField> bookFields = BookField.parse(fields);
+        return toPageResponse(bookAssembler.getFullAllBooks(after, limit, bookFields), bookFields);
     }
 
-    @GetMapping("/{id}")
-    public ResponseEntity<BookWithAverageRatingDTO> getBookById(@PathVariable Long id) {
-        BookWithAverageRatingDTO bookWithAverageRatingDTO = bookAssembler.getFullBookWithAverageRatingDTO(id);
-        if (bookWithAverageRatingDTO != null) {
-            return new ResponseEntity<>(bookWithAverageRatingDTO, HttpStatus.OK);
-        } else {
+    /**
+     * Выгрузка всего каталога в формате NDJSON: по одной книге на строку,
+     * книги пишутся в ответ по мере чтения из БД. Асинхронная обработка ограничена exportTimeout,
+     * тем же сроком ограничена транзакция выгрузки.
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportAll(HttpServletRequest request) {
+        request.setAttribute(AsyncTimeoutConfiguration.TIMEOUT_ATTRIBUTE, exportTimeout);
+        ConcurrencyLimitFilter.markLongRunning(request);
+        StreamingResponseBody body = outputStream ->
+                bookAssembler.exportAllBooks(chunk -> writeNdjsonChunk(outputStream, chunk));
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_NDJSON);
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    /**
+     * Лучшие k книг каталога или жанра genreId по сглаженной средней оценке, ответ собирается в памяти.
+     */
+    @GetMapping("/top")
+    public ResponseEntity<List<TopBookDTO>> getTop(
+            @RequestParam(value = "genreId", required = false) Long genreId,
+            @RequestParam(value = "k", defaultValue = DEFAULT_TOP_SIZE) Integer k) {
+        return new ResponseEntity<>(bookLeaderboard.getTop(genreId, k), HttpStatus.OK);
+    }
+
+    /**
+     * Книга отдаётся готовыми байтами JSON из BookJsonCache, без сборки и сериализации.
+     * Если клиент принимает gzip и для книги есть сжатый ответ, отдаётся он.
+     * Книга с параметром fields собирается из запрошенных полей и не кэшируется.
+     */
+    @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getBookById(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestParam(value = "fields", required = false) String fields) throws JsonProcessingException {
+        if (fields != null) {
+            return getBookFieldsById(id, BookField.parse(fields));
+        }
+        BookJsonCache.BookJson bookJson = bookJsonCache.getBookJson(id);
+        if (bookJson == null) {
             throw new NotFoundException(id);
         }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (bookJson.gzip() != null && acceptsGzip(acceptEncoding)) {
+            headers.add(HttpHeaders.CONTENT_ENCODING, GZIP_ENCODING);
+            return new ResponseEntity<>(bookJson.gzip(), headers, HttpStatus.OK);
+        }
+        return new ResponseEntity<>(bookJson.json(), headers, HttpStatus.OK);
     }
 
     @PutMapping("/{id}")
@@ -54,39 +140,154 @@ public class BookController {
         return new ResponseEntity<>(savedBook, HttpStatus.OK);
     }
 
+    /**
+     * Массовый импорт книг из JSON-массива или NDJSON. Тело читается потоком,
+     * в ответе количество сохранённых и отклонённых книг и первые ошибки по пачкам.
+     */
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<ImportResultDTO> importBooks(InputStream inputStream, HttpServletRequest request)
+            throws IOException {
+        ConcurrencyLimitFilter.markLongRunning(request);
+        ImportResultDTO importResultDTO = bookImportService.importBooks(inputStream);
+        return new ResponseEntity<>(importResultDTO, HttpStatus.OK);
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteBookById(@PathVariable Long id) {
         bookAssembler.deleteBook(id);
         return new ResponseEntity<>(HttpStatus.OK);
     }
 
+    /**
+     * Несколько книг за один запрос: GET /books?ids=1,2,3. Книги идут в порядке ids, ненайденные пропускаются.
+     */
+    @GetMapping(params = "ids")
+    public ResponseEntity<MappingJacksonValue> getBooksByIds(
+            @RequestParam(value = "ids") List<Long> ids,
+            @RequestParam(value = "fields", required = false) String fields) {
+        Set<BookField> bookFields = BookField.parse(fields);
+        return new ResponseEntity<>(withFields(bookAssembler.getBooksByIds(ids, bookFields), bookFields), HttpStatus.OK);
+    }
+
     @GetMapping
-    public ResponseEntity<List<BookWithAverageRatingDTO>> getBooksByAuthorName(@RequestParam(value = "authorName") String authorName) {
-        List<BookWithAverageRatingDTO> bookWithAverageRatingDTOs = bookAssembler.getBooksByAuthorName(authorName);
-        if (!bookWithAverageRatingDTOs.isEmpty()) {
-            return new ResponseEntity<>(bookWithAverageRatingDTOs, HttpStatus.OK);
-        } else {
-            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
-        }
+    public ResponseEntity<MappingJacksonValue> getBooksByAuthorName(
+            @RequestParam(value = "authorName") String authorName,
+            @RequestParam(value = "after", defaultValue = "0") Long after,
+            @RequestParam(value = "limit", defaultValue = DEFAULT_PAGE_SIZE) Integer limit,
+            @RequestParam(value = "fields", required = false) String fields) {
+        Set<BookField> bookFields = BookField.parse(fields);
+        return toPageResponse(bookAssembler.getBooksByAuthorName(authorName, after, limit, bookFields), bookFields);
     }
 
     @GetMapping("/by-author/{authorId}")
-    public ResponseEntity<List<BookWithAverageRatingDTO>> getBooksByAuthorId(@PathVariable Long authorId) {
-        List<BookWithAverageRatingDTO> bookWithAverageRatingDTOs = bookAssembler.getBooksByAuthorId(authorId);
-        if (!bookWithAverageRatingDTOs.isEmpty()) {
-            return new ResponseEntity<>(bookWithAverageRatingDTOs, HttpStatus.OK);
-        } else {
-            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
-        }
+    public ResponseEntity<MappingJacksonValue> getBooksByAuthorId(
+            @PathVariable Long authorId,
+            @RequestParam(value = "after", defaultValue = "0") Long after,
+            @RequestParam(value = "limit", defaultValue = DEFAULT_PAGE_SIZE) Integer limit,
+            @RequestParam(value = "fields", required = false) String fields) {
+        Set<BookField> bookFields = BookField.parse(fields);
+        return toPageResponse(bookAssembler.getBooksByAuthorId(authorId, after, limit, bookFields), bookFields);
     }
 
     @GetMapping("/genre/{genreId}")
-    public ResponseEntity<List<BookWithAverageRatingDTO>> getBooksByGenreId(@PathVariable Long genreId) {
-        List<BookWithAverageRatingDTO> bookWithAverageRatingDTOs = bookAssembler.getBooksByGenreId(genreId);
-        if (!bookWithAverageRatingDTOs.isEmpty()) {
-            return new ResponseEntity<>(bookWithAverageRatingDTOs, HttpStatus.OK);
-        } else {
+    public ResponseEntity<MappingJacksonValue> getBooksByGenreId(
+            @PathVariable Long genreId,
+            @RequestParam(value = "after", defaultValue = "0") Long after,
+            @RequestParam(value = "limit", defaultValue = DEFAULT_PAGE_SIZE) Integer limit,
+            @RequestParam(value = "fields", required = false) String fields) {
+        Set<BookField> bookFields = BookField.parse(fields);
+        return toPageResponse(bookAssembler.getBooksByGenreId(genreId, after, limit, bookFields), bookFields);
+    }
+
+    private ResponseEntity<byte[]> getBookFieldsById(Long id, Set<BookField> bookFields) throws JsonProcessingException {
+        List<BookWithAverageRatingDTO> books = bookAssembler.getBooksByIds(List.of(id), bookFields);
+        if (books.isEmpty()) {
+            throw new NotFoundException(id);
+        }
+        byte[] json = objectMapper.writer(getFieldsFilter(bookFields)).writeValueAsBytes(books.getFirst());
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return new ResponseEntity<>(json, headers, HttpStatus.OK);
+    }
+
+    /**
+     * Курсор следующей страницы передаётся в заголовке X-Next-Cursor,
+     * его значение нужно передать в параметр after следующего запроса.
+     */
+    private ResponseEntity<MappingJacksonValue> toPageResponse(BookPageDTO bookPageDTO, Set<BookField> bookFields) {
+        if (bookPageDTO.getBooks().isEmpty()) {
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
         }
+        HttpHeaders headers = new HttpHeaders();
+        if (bookPageDTO.getNextCursor() != null) {
+            headers.add(NEXT_CURSOR_HEADER, String.valueOf(bookPageDTO.getNextCursor()));
+        }
+        return new ResponseEntity<>(withFields(bookPageDTO.getBooks(), bookFields), headers, HttpStatus.OK);
+    }
+
+    /**
+     * gzip принимается, если он указан в Accept-Encoding с q > 0, а если не указан - если так указан "*".
+     * Например, "gzip;q=0" и "*, gzip;q=0" запрещают gzip, а "*;q=0.5" разрешает.
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzipQuality = null;
+        Double anyQuality = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.regionMatches(true, 0, "q=", 0, 2)) {
+                    quality = parseQuality(parameter.substring(2));
+                }
+            }
+            if (name.equalsIgnoreCase(GZIP_ENCODING)) {
+                gzipQuality = quality;
+            } else if (name.equals("*")) {
+                anyQuality = quality;
+            }
+        }
+        if (gzipQuality != null) {
+            return gzipQuality > 0;
+        }
+        return anyQuality != null && anyQuality > 0;
+    }
+
+    /**
+     * Некорректное значение q считается нулевым: лучше отдать несжатый ответ, чем тот, который клиент не прочитает.
+     */
+    private static double parseQuality(String quality) {
+        try {
+            return Double.parseDouble(quality.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static MappingJacksonValue withFields(List<BookWithAverageRatingDTO> books, Set<BookField> bookFields) {
+        MappingJacksonValue mappingJacksonValue = new MappingJacksonValue(books);
+        mappingJacksonValue.setFilters(getFieldsFilter(bookFields));
+        return mappingJacksonValue;
+    }
+
+    private static FilterProvider getFieldsFilter(Set<BookField> bookFields) {
+        return new SimpleFilterProvider().addFilter(BookWithAverageRatingDTO.FIELDS_FILTER,
+                SimpleBeanPropertyFilter.filterOutAllExcept(BookField.getJsonNames(bookFields)));
+    }
+
+    private void writeNdjsonChunk(OutputStream outputStream, List<BookWithAverageRatingDTO> chunk) {
+        try {
+            for (BookWithAverageRatingDTO bookWithAverageRatingDTO : chunk) {
+                outputStream.write(objectMapper.writeValueAsBytes(bookWithAverageRatingDTO));
+                outputStream.write('\n');
+            }
+            outputStream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
@@ -26,6 +26,14 @@ public class GenreController {
         }
     }
 
+    /**
+     * Несколько жанров за один запрос: GET /genres?ids=1,2,3. Жанры идут в порядке ids, ненайденные пропускаются.
+     */
+    @GetMapping(params = "ids")
+    public ResponseEntity<List<Genre>> getGenresByIds(@RequestParam(value = "ids") List<Long> ids) {
+        return new ResponseEntity<>(genreService.getGenresByIds(ids), HttpStatus.OK);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Genre> getGenreById(@PathVariable Long id) {
         Genre genre = genreService.getGenreById(id);
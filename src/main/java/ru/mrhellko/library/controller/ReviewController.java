@@ -1,31 +1,70 @@
 package ru.mrhellko.library.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.mrhellko.library.Entity.BookReview;
 import ru.mrhellko.library.assembler.BookReviewAssembler;
+import ru.mrhellko.library.assembler.BookReviewImportService;
+import ru.mrhellko.library.dto.BookRatingDistributionDTO;
 import ru.mrhellko.library.dto.BookReviewByBookIdDTO;
 import ru.mrhellko.library.dto.BookReviewByReviewerNameDTO;
+import ru.mrhellko.library.dto.BookReviewPageDTO;
+import ru.mrhellko.library.dto.ImportResultDTO;
 import ru.mrhellko.library.exception.NotFoundException;
+import ru.mrhellko.library.limiter.ConcurrencyLimitFilter;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
 @RequestMapping("/reviews")
 public class ReviewController {
+    private static final String TEXT_CSV_VALUE = "text/csv";
+    private static final String DEFAULT_PAGE_SIZE = "50";
+
     @Autowired
     private BookReviewAssembler bookReviewAssembler;
+    @Autowired
+    private BookReviewImportService bookReviewImportService;
 
+    /**
+     * Отзывы книги страницами от новых к старым. Курсор следующей страницы передаётся в заголовке
+     * X-Next-Cursor, его значение нужно передать в параметр before следующего запроса.
+     */
     @GetMapping("/book/{bookId}")
-    public ResponseEntity<List<BookReviewByBookIdDTO>> getReviewByBookId(@PathVariable Long bookId) {
-        List<BookReviewByBookIdDTO> bookReviewByBookIdDTOs = bookReviewAssembler.getReviewByBookId(bookId);
-        if (!bookReviewByBookIdDTOs.isEmpty()) {
-            return new ResponseEntity<>(bookReviewByBookIdDTOs, HttpStatus.OK);
-        } else {
+    public ResponseEntity<List<BookReviewByBookIdDTO>> getReviewByBookId(
+            @PathVariable Long bookId,
+            @RequestParam(value = "before", required = false) Long before,
+            @RequestParam(value = "limit", defaultValue = DEFAULT_PAGE_SIZE) Integer limit) {
+        long beforeId = before != null ? before : Long.MAX_VALUE;
+        BookReviewPageDTO bookReviewPageDTO = bookReviewAssembler.getReviewByBookId(bookId, beforeId, limit);
+        if (bookReviewPageDTO.getReviews().isEmpty()) {
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
         }
+        HttpHeaders headers = new HttpHeaders();
+        if (bookReviewPageDTO.getNextCursor() != null) {
+            headers.add(BookController.NEXT_CURSOR_HEADER, String.valueOf(bookReviewPageDTO.getNextCursor()));
+        }
+        return new ResponseEntity<>(bookReviewPageDTO.getReviews(), headers, HttpStatus.OK);
+    }
+
+    /**
+     * Только количество отзывов, средняя оценка и распределение оценок книги, без текстов отзывов.
+     */
+    @GetMapping("/book/{bookId}/summary")
+    public ResponseEntity<BookRatingDistributionDTO> getRatingDistribution(@PathVariable Long bookId) {
+        BookRatingDistributionDTO bookRatingDistributionDTO = bookReviewAssembler.getRatingDistribution(bookId);
+        if (bookRatingDistributionDTO != null) {
+            return new ResponseEntity<>(bookRatingDistributionDTO, HttpStatus.OK);
+        } else {
+            throw new NotFoundException(bookId);
+        }
     }
 
     @GetMapping
@@ -54,6 +93,28 @@ public class ReviewController {
         return new ResponseEntity<>(savedBookReview, HttpStatus.OK);
     }
 
+    /**
+     * Массовый импорт отзывов из NDJSON или JSON-массива, тело читается потоком.
+     */
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<ImportResultDTO> importBookReviews(InputStream inputStream, HttpServletRequest request)
+            throws IOException {
+        ConcurrencyLimitFilter.markLongRunning(request);
+        ImportResultDTO importResultDTO = bookReviewImportService.importReviews(inputStream);
+        return new ResponseEntity<>(importResultDTO, HttpStatus.OK);
+    }
+
+    /**
+     * Массовый импорт отзывов из CSV с заголовком bookId,rating,reviewerName,reviewText.
+     */
+    @PostMapping(value = "/bulk", consumes = TEXT_CSV_VALUE)
+    public ResponseEntity<ImportResultDTO> importBookReviewsCsv(InputStream inputStream, HttpServletRequest request)
+            throws IOException {
+        ConcurrencyLimitFilter.markLongRunning(request);
+        ImportResultDTO importResultDTO = bookReviewImportService.importReviewsCsv(inputStream);
+        return new ResponseEntity<>(importResultDTO, HttpStatus.OK);
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteBookReviewById(@PathVariable Long id) {
         bookReviewAssembler.deleteBookReviewById(id);
@@ -1,12 +1,15 @@
 package ru.mrhellko.library.dao;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import ru.mrhellko.library.Entity.Author;
+import ru.mrhellko.library.configuration.CacheConfiguration;
 import ru.mrhellko.library.dto.BookAuthorDTO;
 
 import java.util.*;
@@ -15,7 +18,7 @@ import java.util.*;
 public class AuthorDAO {
     private static final String GET_AUTHOR_BY_ID_SQL = "select a.id, a.author_name from authors a where a.id = ?";
     private static final String UPDATE_AUTHOR_BY_ID_SQL = "update authors set author_name = ? where id = ?";
-    private static final String GET_NEXT_SEQUENCE_ID_SQL = "select nextval('authors_seq') as id";
+    private static final String SEQUENCE_NAME = "authors_seq";
     private static final String SAVE_AUTHOR_SQL = "insert into authors (id, author_name) values (?, ?)";
     private static final String DELETE_AUTHOR_BY_ID_SQL = "delete from authors where id = ?";
     private static final String GET_AUTHORS_FOR_BOOKS_SQL = """
@@ -26,9 +29,13 @@ public class AuthorDAO {
                             left join books b
                                 on ba.BOOK_ID = b.id
                         where b.id IN (:bookIds)""";
+    private static final String GET_EXISTING_AUTHOR_IDS_SQL = "select a.id from authors a where a.id IN (:ids)";
+    private static final String GET_AUTHORS_BY_IDS_SQL = "select a.id, a.author_name from authors a where a.id IN (:ids)";
     @Autowired
     private JdbcTemplate jdbcTemplate;
     @Autowired
+    private IdAllocator idAllocator;
+    @Autowired
     private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
     private final RowMapper<Author> authorRowMapper = (resultSet, _) -> {
         final Author author = new Author();
@@ -45,6 +52,7 @@ public class AuthorDAO {
     };
     private final RowMapper<Long> idRowMapper = (resultSet, _) -> (Long) resultSet.getLong("id");
 
+    @Cacheable(cacheNames = CacheConfiguration.AUTHORS_CACHE, key = "#id", unless = "#result == null")
     public Author getAuthorById(Long id) {
         try {
             return jdbcTemplate.queryForObject(
@@ -57,20 +65,34 @@ public class AuthorDAO {
         }
     }
 
+    @CacheEvict(cacheNames = CacheConfiguration.AUTHORS_CACHE, key = "#author.id")
     public void updateAuthor(Author author) {
         jdbcTemplate.update(UPDATE_AUTHOR_BY_ID_SQL, author.getAuthorName(), author.getId());
     }
 
     public Author saveAuthor(Author author) {
-        author.setId(jdbcTemplate.queryForObject(GET_NEXT_SEQUENCE_ID_SQL, idRowMapper));
+        author.setId(idAllocator.nextId(SEQUENCE_NAME));
         jdbcTemplate.update(SAVE_AUTHOR_SQL, author.getId(), author.getAuthorName());
         return author;
     }
 
+    @CacheEvict(cacheNames = CacheConfiguration.AUTHORS_CACHE, key = "#id")
     public int deleteAuthorById(Long id) {
         return jdbcTemplate.update(DELETE_AUTHOR_BY_ID_SQL, id);
     }
 
+    /**
+     * Авторы с id из набора одним запросом, порядок авторов не определён, несуществующие id пропускаются.
+     */
+    public List<Author> getAuthorsByIds(Set<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("ids", ids);
+        return namedParameterJdbcTemplate.query(GET_AUTHORS_BY_IDS_SQL, params, authorRowMapper);
+    }
+
     public List<BookAuthorDTO> getAuthorsForBooks(Set<Long> bookIds) {
         if (bookIds == null || bookIds.isEmpty()) {
             return Collections.emptyList();
@@ -79,4 +101,19 @@ public class AuthorDAO {
         params.put("bookIds", bookIds);
         return namedParameterJdbcTemplate.query(GET_AUTHORS_FOR_BOOKS_SQL, params, bookAuthorDTORowMapper);
     }
+
+    /**
+     * Возвращает те id из набора, для которых нет автора, одним запросом на весь набор.
+     */
+    public Set<Long> getMissingAuthorIds(Set<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("ids", ids);
+        List<Long> existingIds = namedParameterJdbcTemplate.query(GET_EXISTING_AUTHOR_IDS_SQL, params, idRowMapper);
+        Set<Long> missingIds = new HashSet<>(ids);
+        existingIds.forEach(missingIds::remove);
+        return missingIds;
+    }
 }
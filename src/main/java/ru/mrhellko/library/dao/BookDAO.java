@@ -4,39 +4,120 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.mrhellko.library.Entity.Author;
 import ru.mrhellko.library.Entity.Book;
+import ru.mrhellko.library.Entity.Genre;
+import ru.mrhellko.library.dto.BookGenreRatingDTO;
+import ru.mrhellko.library.dto.BookRatingDTO;
+import ru.mrhellko.library.dto.BookWithAverageRatingDTO;
 
-import java.util.List;
+import java.sql.PreparedStatement;
+import java.util.*;
+import java.util.stream.Stream;
 
 @Service
 public class BookDAO {
+    private static final int STREAM_FETCH_SIZE = 1000;
 
     private static final String GET_BOOK_BY_ID_SQL = "select b.id, b.book_name from books b where b.id = ?";
-    private static final String GET_ALL_BOOKS_SQL = "select b.id, b.book_name from books b";
+    private static final String GET_FULL_BOOK_BY_ID_SQL = """
+            select b.id, b.book_name,
+                   (select array_agg(a.id order by a.id) from book_authors ba
+                        join authors a on ba.author_id = a.id
+                    where ba.book_id = b.id) as author_ids,
+                   (select array_agg(a.author_name order by a.id) from book_authors ba
+                        join authors a on ba.author_id = a.id
+                    where ba.book_id = b.id) as author_names,
+                   (select array_agg(g.id order by g.id) from book_genres bg
+                        join genres g on bg.genre_id = g.id
+                    where bg.book_id = b.id) as genre_ids,
+                   (select array_agg(g.genre_name order by g.id) from book_genres bg
+                        join genres g on bg.genre_id = g.id
+                    where bg.book_id = b.id) as genre_names,
+                   s.review_count, s.rating_sum
+            from books b
+                left join book_rating_summary s on s.book_id = b.id
+            where b.id = ?""";
+    private static final String GET_BOOK_GENRE_RATINGS_BY_IDS_SQL = """
+            select b.id, b.book_name, s.review_count, s.rating_sum,
+                   (select array_agg(bg.genre_id order by bg.genre_id) from book_genres bg
+                    where bg.book_id = b.id) as genre_ids
+            from books b
+                left join book_rating_summary s on s.book_id = b.id
+            where b.id IN (:ids)""";
+    private static final String GET_TOP_BOOK_GENRE_RATINGS_SQL = """
+            select b.id, b.book_name, s.review_count, s.rating_sum,
+                   (select array_agg(bg.genre_id order by bg.genre_id) from book_genres bg
+                    where bg.book_id = b.id) as genre_ids
+            from books b
+                join book_rating_summary s on s.book_id = b.id
+            where s.review_count > 0
+            order by (cast(? as double precision) + s.rating_sum) / (cast(? as double precision) + s.review_count) desc, b.id
+            limit ?""";
+    private static final String GET_TOP_BOOK_GENRE_RATINGS_BY_GENRE_ID_SQL = """
+            select b.id, b.book_name, s.review_count, s.rating_sum,
+                   (select array_agg(bg.genre_id order by bg.genre_id) from book_genres bg
+                    where bg.book_id = b.id) as genre_ids
+            from book_genres g
+                join books b on b.id = g.book_id
+                join book_rating_summary s on s.book_id = b.id
+            where g.genre_id = ? and s.review_count > 0
+            order by (cast(? as double precision) + s.rating_sum) / (cast(? as double precision) + s.review_count) desc, b.id
+            limit ?""";
+    private static final String GET_RATING_TOTALS_SQL = """
+            select coalesce(sum(s.review_count), 0) as review_count, coalesce(sum(s.rating_sum), 0) as rating_sum
+            from book_rating_summary s""";
+    private static final String GET_ALL_BOOKS_SQL =
+            "select b.id, b.book_name from books b where b.id > ? order by b.id limit ?";
+    private static final String STREAM_ALL_BOOKS_SQL = "select b.id, b.book_name from books b order by b.id";
     private static final String UPDATE_BOOK_BY_ID_SQL = "update books set book_name = ? where id = ?";
     private static final String SAVE_BOOK_SQL = "insert into books (id, book_name) values (?, ?)";
+    private static final String SAVE_BOOK_RATING_SUMMARY_SQL = "insert into book_rating_summary (book_id) values (?)";
     private static final String SAVE_BOOK_AUTHOR_SQL = "insert into book_authors (book_id, author_id) values (?, ?)";
     private static final String SAVE_BOOK_GENRE_SQL = "insert into book_genres (book_id, genre_id) values (?, ?)";
+    private static final String COPY_BOOKS_SQL = "copy books (id, book_name) from stdin with (format csv)";
+    private static final String COPY_BOOK_RATING_SUMMARY_SQL =
+            "copy book_rating_summary (book_id) from stdin with (format csv)";
+    private static final String COPY_BOOK_AUTHORS_SQL =
+            "copy book_authors (book_id, author_id) from stdin with (format csv)";
+    private static final String COPY_BOOK_GENRES_SQL =
+            "copy book_genres (book_id, genre_id) from stdin with (format csv)";
     private static final String DELETE_BOOK_BY_ID_SQL = "delete from books where id = ?";
     private static final String DELETE_BOOK_AUTHOR_SQL = "delete from book_authors where book_id = ? and author_id = ?";
     private static final String DELETE_BOOK_GENRE_SQL = "delete from book_genres where book_id = ? and genre_id = ?";
     private static final String GET_BOOKS_BY_AUTHOR_NAME_SQL = """
-            select distinct b.id, b.book_name from books b
-                left join book_authors ba on b.id = ba.book_id
-                join authors a on ba.author_id = a.id
-                                     where a.author_name ilike '%' || ? || '%'""";
-    private static final String GET_NEXT_BOOK_SEQUENCE_ID_SQL = "select nextval('books_seq') as id";
+            select b.id, b.book_name from books b
+                where b.id in (select ba.book_id from book_authors ba
+                                   join authors a on ba.author_id = a.id
+                               where a.author_name ilike ? escape '\\')
+                  and b.id > ?
+                order by b.id limit ?""";
+    private static final String SEQUENCE_NAME = "books_seq";
+    private static final String GET_EXISTING_BOOK_IDS_SQL = "select b.id from books b where b.id IN (:ids)";
+    private static final String GET_BOOKS_BY_IDS_SQL = "select b.id, b.book_name from books b where b.id IN (:ids)";
+    private static final String GET_BOOK_IDS_BY_AUTHOR_ID_SQL = "select ba.book_id as id from book_authors ba where ba.author_id = ?";
+    private static final String GET_BOOK_IDS_BY_GENRE_ID_SQL = "select bg.book_id as id from book_genres bg where bg.genre_id = ?";
     private static final String GET_BOOKS_BY_AUTHOR_ID_SQL = """
             select b.id, b.book_name from books b
                 left join book_authors ba on b.id = ba.book_id
-                                     where ba.author_id = ?""";
+                                     where ba.author_id = ? and b.id > ?
+                order by b.id limit ?""";
     private static final String GET_BOOKS_BY_GENRE_ID_SQL = """
             select b.id, b.book_name from books b
                 left join book_genres bg on b.id = bg.book_id
-                                    where bg.genre_id = ?""";
+                                    where bg.genre_id = ? and b.id > ?
+                order by b.id limit ?""";
     @Autowired
     private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    @Autowired
+    private IdAllocator idAllocator;
+    @Autowired
+    private BulkWriter bulkWriter;
     private final RowMapper<Book> bookRowMapper = (resultSet, _) -> {
         final Book book = new Book();
         book.setId(resultSet.getLong("id"));
@@ -44,6 +125,37 @@ public class BookDAO {
         return book;
     };
     private final RowMapper<Long> idRowMapper = (resultSet, _) -> (Long) resultSet.getLong("id");
+    private final RowMapper<BookWithAverageRatingDTO> fullBookRowMapper = (resultSet, _) -> {
+        final Book book = new Book();
+        book.setId(resultSet.getLong("id"));
+        book.setBookName(resultSet.getString("book_name"));
+        List<Long> authorIds = SqlArrays.getLongs(resultSet, "author_ids");
+        List<String> authorNames = SqlArrays.getStrings(resultSet, "author_names");
+        for (int i = 0; i < authorIds.size(); i++) {
+            book.getAuthors().add(new Author(authorIds.get(i), authorNames.get(i)));
+        }
+        List<Long> genreIds = SqlArrays.getLongs(resultSet, "genre_ids");
+        List<String> genreNames = SqlArrays.getStrings(resultSet, "genre_names");
+        for (int i = 0; i < genreIds.size(); i++) {
+            book.getGenres().add(new Genre(genreIds.get(i), genreNames.get(i)));
+        }
+        final BookWithAverageRatingDTO bookWithAverageRatingDTO = new BookWithAverageRatingDTO(book);
+        long reviewCount = resultSet.getLong("review_count");
+        if (reviewCount > 0) {
+            bookWithAverageRatingDTO.setAverageRating((float) resultSet.getLong("rating_sum") / reviewCount);
+        }
+        return bookWithAverageRatingDTO;
+    };
+
+    private final RowMapper<BookGenreRatingDTO> bookGenreRatingDTORowMapper = (resultSet, _) -> {
+        final BookGenreRatingDTO bookGenreRatingDTO = new BookGenreRatingDTO();
+        bookGenreRatingDTO.setBookId(resultSet.getLong("id"));
+        bookGenreRatingDTO.setBookName(resultSet.getString("book_name"));
+        bookGenreRatingDTO.setGenreIds(SqlArrays.getLongs(resultSet, "genre_ids"));
+        bookGenreRatingDTO.setReviewCount(resultSet.getLong("review_count"));
+        bookGenreRatingDTO.setRatingSum(resultSet.getLong("rating_sum"));
+        return bookGenreRatingDTO;
+    };
 
     public Book getBookById(long id) {
         try {
@@ -57,17 +169,106 @@ public class BookDAO {
         }
     }
 
-    public List<Book> getAll() {
-        return jdbcTemplate.query(GET_ALL_BOOKS_SQL, bookRowMapper);
+    //Авторы и жанры собираются в массивы подзапросами, поэтому книга читается одним запросом
+    public BookWithAverageRatingDTO getFullBookById(long id) {
+        try {
+            return jdbcTemplate.queryForObject(
+                    GET_FULL_BOOK_BY_ID_SQL,
+                    fullBookRowMapper,
+                    id
+            );
+        } catch (IncorrectResultSizeDataAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Возвращает те id из набора, для которых нет книги, одним запросом на весь набор.
+     */
+    public Set<Long> getMissingBookIds(Set<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("ids", ids);
+        List<Long> existingIds = namedParameterJdbcTemplate.query(GET_EXISTING_BOOK_IDS_SQL, params, idRowMapper);
+        Set<Long> missingIds = new HashSet<>(ids);
+        existingIds.forEach(missingIds::remove);
+        return missingIds;
+    }
+
+    /**
+     * Книги с id из набора одним запросом, порядок книг не определён, несуществующие id пропускаются.
+     */
+    public List<Book> getBooksByIds(Set<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("ids", ids);
+        return namedParameterJdbcTemplate.query(GET_BOOKS_BY_IDS_SQL, params, bookRowMapper);
+    }
+
+    /**
+     * Книги с id из набора с id жанров и сводкой оценок, несуществующие id пропускаются.
+     */
+    public List<BookGenreRatingDTO> getBookGenreRatingsByIds(Set<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("ids", ids);
+        return namedParameterJdbcTemplate.query(GET_BOOK_GENRE_RATINGS_BY_IDS_SQL, params, bookGenreRatingDTORowMapper);
+    }
+
+    /**
+     * Не больше limit книг с отзывами по убыванию сглаженной средней
+     * (minVotes * meanRating + сумма оценок) / (minVotes + количество отзывов), при равенстве по возрастанию id:
+     * по всему каталогу, если genreId == null, иначе по жанру.
+     */
+    public List<BookGenreRatingDTO> getTopBookGenreRatings(Long genreId, int minVotes, double meanRating, int limit) {
+        double priorRatingSum = minVotes * meanRating;
+        if (genreId == null) {
+            return jdbcTemplate.query(GET_TOP_BOOK_GENRE_RATINGS_SQL, bookGenreRatingDTORowMapper,
+                    priorRatingSum, (double) minVotes, limit);
+        }
+        return jdbcTemplate.query(GET_TOP_BOOK_GENRE_RATINGS_BY_GENRE_ID_SQL, bookGenreRatingDTORowMapper,
+                genreId, priorRatingSum, (double) minVotes, limit);
+    }
+
+    /**
+     * Количество и сумма оценок всего каталога, bookId в результате пустой.
+     */
+    public BookRatingDTO getRatingTotals() {
+        return jdbcTemplate.queryForObject(GET_RATING_TOTALS_SQL, (resultSet, _) ->
+                new BookRatingDTO(null, resultSet.getLong("review_count"), resultSet.getLong("rating_sum")));
+    }
+
+    public List<Book> getAll(long afterId, int limit) {
+        return jdbcTemplate.query(GET_ALL_BOOKS_SQL, bookRowMapper, afterId, limit);
+    }
+
+    /**
+     * Читает все книги курсором порциями по STREAM_FETCH_SIZE строк.
+     * Для PostgreSQL курсор работает только внутри транзакции, поток нужно закрыть после чтения.
+     */
+    public Stream<Book> streamAll() {
+        return jdbcTemplate.queryForStream(connection -> {
+            PreparedStatement preparedStatement = connection.prepareStatement(STREAM_ALL_BOOKS_SQL);
+            preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+            return preparedStatement;
+        }, bookRowMapper);
     }
 
     public void updateBook(Book book) {
         jdbcTemplate.update(UPDATE_BOOK_BY_ID_SQL, book.getBookName(), book.getId());
     }
 
+    @Transactional
     public Book saveBook(Book book) {
-        book.setId(jdbcTemplate.queryForObject(GET_NEXT_BOOK_SEQUENCE_ID_SQL, idRowMapper));
+        book.setId(idAllocator.nextId(SEQUENCE_NAME));
         jdbcTemplate.update(SAVE_BOOK_SQL, book.getId(), book.getBookName());
+        jdbcTemplate.update(SAVE_BOOK_RATING_SUMMARY_SQL, book.getId());
         return book;
     }
 
@@ -75,31 +276,94 @@ public class BookDAO {
         return jdbcTemplate.update(DELETE_BOOK_BY_ID_SQL, id);
     }
 
-    public List<Book> getBooksByAuthorName(String authorName) {
-        return jdbcTemplate.query(GET_BOOKS_BY_AUTHOR_NAME_SQL, bookRowMapper, authorName);
+    public List<Book> getBooksByAuthorName(String authorName, long afterId, int limit) {
+        return jdbcTemplate.query(GET_BOOKS_BY_AUTHOR_NAME_SQL, bookRowMapper, toContainsPattern(authorName), afterId, limit);
     }
 
-    public void saveBookAuthor(Long bookId, Long authorId) {
-        jdbcTemplate.update(SAVE_BOOK_AUTHOR_SQL, bookId, authorId);
+    /**
+     * Сохраняет пачку книг вместе со связями одной транзакцией, без запроса на каждую строку:
+     * id выдаются из IdAllocator, строки пишутся через BulkWriter (COPY на PostgreSQL).
+     */
+    @Transactional
+    public void saveBooks(List<Book> books) {
+        List<Object[]> bookRows = new ArrayList<>(books.size());
+        List<Object[]> summaryRows = new ArrayList<>(books.size());
+        List<Object[]> authorRows = new ArrayList<>();
+        List<Object[]> genreRows = new ArrayList<>();
+        for (Book book : books) {
+            book.setId(idAllocator.nextId(SEQUENCE_NAME));
+            bookRows.add(new Object[]{book.getId(), book.getBookName()});
+            summaryRows.add(new Object[]{book.getId()});
+            Set<Long> authorIds = new LinkedHashSet<>();
+            for (Author author : book.getAuthors()) {
+                authorIds.add(author.getId());
+            }
+            authorRows.addAll(toBatchArgs(book.getId(), authorIds));
+            Set<Long> genreIds = new LinkedHashSet<>();
+            for (Genre genre : book.getGenres()) {
+                genreIds.add(genre.getId());
+            }
+            genreRows.addAll(toBatchArgs(book.getId(), genreIds));
+        }
+        bulkWriter.write(COPY_BOOKS_SQL, SAVE_BOOK_SQL, bookRows);
+        bulkWriter.write(COPY_BOOK_RATING_SUMMARY_SQL, SAVE_BOOK_RATING_SUMMARY_SQL, summaryRows);
+        bulkWriter.write(COPY_BOOK_AUTHORS_SQL, SAVE_BOOK_AUTHOR_SQL, authorRows);
+        bulkWriter.write(COPY_BOOK_GENRES_SQL, SAVE_BOOK_GENRE_SQL, genreRows);
     }
 
-    public int deleteBookAuthor(Long bookId, Long authorId) {
-        return jdbcTemplate.update(DELETE_BOOK_AUTHOR_SQL, bookId, authorId);
+    public void saveBookAuthors(Long bookId, Collection<Long> authorIds) {
+        if (!authorIds.isEmpty()) {
+            jdbcTemplate.batchUpdate(SAVE_BOOK_AUTHOR_SQL, toBatchArgs(bookId, authorIds));
+        }
     }
 
-    public void saveBookGenre(Long bookId, Long genreId) {
-        jdbcTemplate.update(SAVE_BOOK_GENRE_SQL, bookId, genreId);
+    public void deleteBookAuthors(Long bookId, Collection<Long> authorIds) {
+        if (!authorIds.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_BOOK_AUTHOR_SQL, toBatchArgs(bookId, authorIds));
+        }
     }
 
-    public int deleteBookGenre(Long bookId, Long genreId) {
-        return jdbcTemplate.update(DELETE_BOOK_GENRE_SQL, bookId, genreId);
+    public void saveBookGenres(Long bookId, Collection<Long> genreIds) {
+        if (!genreIds.isEmpty()) {
+            jdbcTemplate.batchUpdate(SAVE_BOOK_GENRE_SQL, toBatchArgs(bookId, genreIds));
+        }
+    }
+
+    public void deleteBookGenres(Long bookId, Collection<Long> genreIds) {
+        if (!genreIds.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_BOOK_GENRE_SQL, toBatchArgs(bookId, genreIds));
+        }
     }
 
-    public List<Book> getBooksByAuthorId(Long authorId) {
-        return jdbcTemplate.query(GET_BOOKS_BY_AUTHOR_ID_SQL, bookRowMapper, authorId);
+    public List<Long> getBookIdsByAuthorId(Long authorId) {
+        return jdbcTemplate.query(GET_BOOK_IDS_BY_AUTHOR_ID_SQL, idRowMapper, authorId);
+    }
+
+    public List<Long> getBookIdsByGenreId(Long genreId) {
+        return jdbcTemplate.query(GET_BOOK_IDS_BY_GENRE_ID_SQL, idRowMapper, genreId);
+    }
+
+    public List<Book> getBooksByAuthorId(Long authorId, long afterId, int limit) {
+        return jdbcTemplate.query(GET_BOOKS_BY_AUTHOR_ID_SQL, bookRowMapper, authorId, afterId, limit);
+    }
+
+    public List<Book> getBooksByGenreId(Long genreId, long afterId, int limit) {
+        return jdbcTemplate.query(GET_BOOKS_BY_GENRE_ID_SQL, bookRowMapper, genreId, afterId, limit);
+    }
+
+    private static List<Object[]> toBatchArgs(Long bookId, Collection<Long> ids) {
+        List<Object[]> batchArgs = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            batchArgs.add(new Object[]{bookId, id});
+        }
+        return batchArgs;
     }
 
-    public List<Book> getBooksByGenreId(Long genreId) {
-        return jdbcTemplate.query(GET_BOOKS_BY_GENRE_ID_SQL, bookRowMapper, genreId);
+    /**
+     * Шаблон целиком передаётся параметром, чтобы планировщик PostgreSQL мог использовать
+     * триграммный индекс по authors.author_name. Спецсимволы like в строке поиска экранируются.
+     */
+    private static String toContainsPattern(String value) {
+        return "%" + value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
     }
 }
@@ -4,34 +4,71 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.mrhellko.library.Entity.BookReview;
+import ru.mrhellko.library.dto.BookRatingDTO;
+import ru.mrhellko.library.dto.BookRatingDistributionDTO;
 import ru.mrhellko.library.dto.BookReviewByReviewerNameDTO;
 
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 
 @Service
 public class BookReviewDAO {
+    private static final int MAX_RATING = 10;
     private static final String GET_REVIEW_BY_ID_SQL =
             "select r.id, r.book_id, r.rating, r.reviewer_name, r.review_text from book_reviews r where r.id = ?";
-    private static final String GET_REVIEW_BY_ID_BOOK_SQL =
-            "select r.id, r.book_id, r.rating, r.reviewer_name, r.review_text from book_reviews r where r.book_id = ?";
+    private static final String GET_REVIEW_BY_ID_FOR_UPDATE_SQL = GET_REVIEW_BY_ID_SQL + " for update";
+    private static final String GET_REVIEW_BY_ID_BOOK_SQL = """
+            select r.id, r.book_id, r.rating, r.reviewer_name, r.review_text from book_reviews r
+            where r.book_id = ? and r.id < ?
+            order by r.id desc limit ?""";
+    private static final String GET_RATING_DISTRIBUTION_SQL = """
+            select s.book_id, s.review_count, s.rating_sum,
+                   s.rating_1, s.rating_2, s.rating_3, s.rating_4, s.rating_5,
+                   s.rating_6, s.rating_7, s.rating_8, s.rating_9, s.rating_10
+            from book_rating_summary s
+            where s.book_id = ?""";
     private static final String GET_REVIEW_BY_REVIEWER_NAME_SQL = """
-            select r.review_text, r.rating, b.book_name, string_agg(a.author_name, ', ') as authors
+            select r.id, r.review_text, r.rating, b.book_name,
+                   (select array_agg(a.author_name order by a.id) from book_authors ba
+                        join authors a on ba.author_id = a.id
+                    where ba.book_id = b.id) as author_names,
+                   (select array_agg(g.genre_name order by g.id) from book_genres bg
+                        join genres g on bg.genre_id = g.id
+                    where bg.book_id = b.id) as genre_names
             from book_reviews r inner join books b on b.id = r.book_id
-            inner join book_authors ba on ba.book_id = b.id
-            inner join authors a on a.id = ba.author_id
             where r.reviewer_name = ?
-            group by r.review_text, r.rating, b.book_name, b.id""";
+            order by r.id""";
     private static final String UPDATE_REVIEW_BY_ID_SQL =
             "update book_reviews set book_id = ?, rating = ?, reviewer_name = ?, review_text = ? where id = ?";
     private static final String SAVE_REVIEW_SQL =
             "insert into book_reviews (id, book_id, rating, reviewer_name, review_text) values (?, ?, ?, ?, ?)";
+    private static final String COPY_REVIEWS_SQL =
+            "copy book_reviews (id, book_id, rating, reviewer_name, review_text) from stdin with (format csv)";
     private static final String DELETE_REVIEW_BY_ID_SQL = "delete from book_reviews where id = ?";
-    private static final String GET_NEXT_SEQUENCE_ID_SQL = "select nextval('book_reviews_seq') as id";
+    private static final String SEQUENCE_NAME = "book_reviews_seq";
+    private static final String GET_RATINGS_FOR_BOOKS_SQL = """
+            select s.book_id, s.review_count, s.rating_sum
+            from book_rating_summary s
+            where s.book_id IN (:bookIds) and s.review_count > 0""";
+    private static final String UPDATE_RATING_SUMMARY_SQL = """
+            update book_rating_summary
+            set review_count = review_count + ?, rating_sum = rating_sum + ?,
+                rating_1 = rating_1 + ?, rating_2 = rating_2 + ?, rating_3 = rating_3 + ?,
+                rating_4 = rating_4 + ?, rating_5 = rating_5 + ?, rating_6 = rating_6 + ?,
+                rating_7 = rating_7 + ?, rating_8 = rating_8 + ?, rating_9 = rating_9 + ?,
+                rating_10 = rating_10 + ?
+            where book_id = ?""";
     @Autowired
     private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private IdAllocator idAllocator;
+    @Autowired
+    private BulkWriter bulkWriter;
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
     private final RowMapper<BookReview> bookReviewRowMapper = (resultSet, _) -> {
         final BookReview bookReview = new BookReview();
         bookReview.setId(resultSet.getLong("id"));
@@ -46,10 +83,30 @@ public class BookReviewDAO {
         bookReviewByReviewerNameDTO.setReviewText(resultSet.getString("review_text"));
         bookReviewByReviewerNameDTO.setRating(resultSet.getByte("rating"));
         bookReviewByReviewerNameDTO.setBookName(resultSet.getString("book_name"));
-        bookReviewByReviewerNameDTO.setAuthorNames(Arrays.stream(resultSet.getString("authors").split(", ")).toList());
+        bookReviewByReviewerNameDTO.setAuthorNames(SqlArrays.getStrings(resultSet, "author_names"));
+        bookReviewByReviewerNameDTO.setGenreNames(SqlArrays.getStrings(resultSet, "genre_names"));
         return bookReviewByReviewerNameDTO;
     };
-    private final RowMapper<Long> idRowMapper = (resultSet, _) -> (Long) resultSet.getLong("id");
+    private final RowMapper<BookRatingDTO> bookRatingDTORowMapper = (resultSet, _) -> {
+        final BookRatingDTO bookRatingDTO = new BookRatingDTO();
+        bookRatingDTO.setBookId(resultSet.getLong("book_id"));
+        bookRatingDTO.setReviewCount(resultSet.getLong("review_count"));
+        bookRatingDTO.setRatingSum(resultSet.getLong("rating_sum"));
+        return bookRatingDTO;
+    };
+    private final RowMapper<BookRatingDistributionDTO> bookRatingDistributionDTORowMapper = (resultSet, _) -> {
+        final BookRatingDistributionDTO bookRatingDistributionDTO = new BookRatingDistributionDTO();
+        bookRatingDistributionDTO.setBookId(resultSet.getLong("book_id"));
+        long reviewCount = resultSet.getLong("review_count");
+        bookRatingDistributionDTO.setReviewCount(reviewCount);
+        if (reviewCount > 0) {
+            bookRatingDistributionDTO.setAverageRating((float) resultSet.getLong("rating_sum") / reviewCount);
+        }
+        for (int rating = 1; rating <= MAX_RATING; rating++) {
+            bookRatingDistributionDTO.getRatings().put(rating, resultSet.getLong("rating_" + rating));
+        }
+        return bookRatingDistributionDTO;
+    };
 
     public BookReview getReviewById(long id) {
         try {
@@ -59,15 +116,44 @@ public class BookReviewDAO {
         }
     }
 
-    public List<BookReview> getReviewByBookId(long bookId) {
-
+    /**
+     * Отзывы книги от новых к старым: не больше limit отзывов с id меньше beforeId.
+     */
+    public List<BookReview> getReviewByBookId(long bookId, long beforeId, int limit) {
         return jdbcTemplate.query(
                 GET_REVIEW_BY_ID_BOOK_SQL,
                 bookReviewRowMapper,
-                bookId
+                bookId,
+                beforeId,
+                limit
         );
     }
 
+    /**
+     * Количество отзывов, средняя оценка и гистограмма оценок книги из book_rating_summary,
+     * null если книги нет.
+     */
+    public BookRatingDistributionDTO getRatingDistribution(long bookId) {
+        try {
+            return jdbcTemplate.queryForObject(GET_RATING_DISTRIBUTION_SQL, bookRatingDistributionDTORowMapper, bookId);
+        } catch (IncorrectResultSizeDataAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Возвращает количество и сумму оценок для каждой книги из набора одним групповым запросом.
+     * Книги без отзывов в результат не попадают.
+     */
+    public List<BookRatingDTO> getRatingsForBooks(Set<Long> bookIds) {
+        if (bookIds == null || bookIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("bookIds", bookIds);
+        return namedParameterJdbcTemplate.query(GET_RATINGS_FOR_BOOKS_SQL, params, bookRatingDTORowMapper);
+    }
+
     public List<BookReviewByReviewerNameDTO> getReviewByReviewerName(String reviewerName) {
         return jdbcTemplate.query(
                 GET_REVIEW_BY_REVIEWER_NAME_SQL,
@@ -76,27 +162,115 @@ public class BookReviewDAO {
         );
     }
 
+    @Transactional
     public void updateBookReview(BookReview bookReview) {
+        BookReview oldBookReview = getReviewForUpdate(bookReview.getId());
         jdbcTemplate.update(UPDATE_REVIEW_BY_ID_SQL,
                 bookReview.getBookId(),
                 bookReview.getRating(),
                 bookReview.getReviewerName(),
                 bookReview.getReviewText(),
                 bookReview.getId());
+        if (oldBookReview != null) {
+            updateRatingSummary(oldBookReview.getBookId(), oldBookReview.getRating(), -1);
+            updateRatingSummary(bookReview.getBookId(), bookReview.getRating(), 1);
+        }
     }
 
+    @Transactional
     public BookReview saveBookReview(BookReview bookReview) {
-        bookReview.setId(jdbcTemplate.queryForObject(GET_NEXT_SEQUENCE_ID_SQL, idRowMapper));
+        bookReview.setId(idAllocator.nextId(SEQUENCE_NAME));
         jdbcTemplate.update(SAVE_REVIEW_SQL,
                 bookReview.getId(),
                 bookReview.getBookId(),
                 bookReview.getRating(),
                 bookReview.getReviewerName(),
                 bookReview.getReviewText());
+        updateRatingSummary(bookReview.getBookId(), bookReview.getRating(), 1);
         return bookReview;
     }
 
+    /**
+     * Сохраняет пачку отзывов одной транзакцией: строки пишутся через BulkWriter (COPY на PostgreSQL),
+     * сводка оценок обновляется одним пакетом, по строке на книгу. Книги обновляются по возрастанию id,
+     * чтобы параллельные импорты блокировали строки сводки в одном порядке.
+     */
+    @Transactional
+    public void saveBookReviews(List<BookReview> bookReviews) {
+        List<Object[]> reviewRows = new ArrayList<>(bookReviews.size());
+        Map<Long, long[]> summaryDeltas = new TreeMap<>();
+        for (BookReview bookReview : bookReviews) {
+            bookReview.setId(idAllocator.nextId(SEQUENCE_NAME));
+            reviewRows.add(new Object[]{
+                    bookReview.getId(),
+                    bookReview.getBookId(),
+                    bookReview.getRating(),
+                    bookReview.getReviewerName(),
+                    bookReview.getReviewText()});
+            if (bookReview.getBookId() != null && bookReview.getRating() != null) {
+                long[] delta = summaryDeltas.computeIfAbsent(bookReview.getBookId(), _ -> new long[MAX_RATING + 2]);
+                int rating = bookReview.getRating();
+                delta[0]++;
+                delta[1] += rating;
+                if (rating >= 1 && rating <= MAX_RATING) {
+                    delta[rating + 1]++;
+                }
+            }
+        }
+        bulkWriter.write(COPY_REVIEWS_SQL, SAVE_REVIEW_SQL, reviewRows);
+
+        List<Object[]> summaryArgs = new ArrayList<>(summaryDeltas.size());
+        for (Map.Entry<Long, long[]> entry : summaryDeltas.entrySet()) {
+            Object[] args = new Object[MAX_RATING + 3];
+            for (int i = 0; i < MAX_RATING + 2; i++) {
+                args[i] = entry.getValue()[i];
+            }
+            args[MAX_RATING + 2] = entry.getKey();
+            summaryArgs.add(args);
+        }
+        if (!summaryArgs.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_RATING_SUMMARY_SQL, summaryArgs);
+        }
+    }
+
+    @Transactional
     public int deleteBookReviewById(Long id) {
-        return jdbcTemplate.update(DELETE_REVIEW_BY_ID_SQL, id);
+        BookReview bookReview = getReviewForUpdate(id);
+        int deleted = jdbcTemplate.update(DELETE_REVIEW_BY_ID_SQL, id);
+        if (deleted > 0 && bookReview != null) {
+            updateRatingSummary(bookReview.getBookId(), bookReview.getRating(), -1);
+        }
+        return deleted;
+    }
+
+    /**
+     * Отзыв по id с блокировкой строки до конца транзакции, null если отзыва нет. Вызывается внутри транзакции:
+     * пока она не завершилась, книгу и оценку отзыва никто не изменит.
+     */
+    public BookReview getReviewForUpdate(Long id) {
+        try {
+            return jdbcTemplate.queryForObject(GET_REVIEW_BY_ID_FOR_UPDATE_SQL, bookReviewRowMapper, id);
+        } catch (IncorrectResultSizeDataAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Добавляет (delta = 1) или вычитает (delta = -1) оценку из сводки book_rating_summary.
+     * Оценки вне диапазона 1..10 учитываются в количестве и сумме, но не в гистограмме,
+     * так же как при первоначальном заполнении сводки.
+     */
+    private void updateRatingSummary(Long bookId, Byte rating, int delta) {
+        if (bookId == null || rating == null) {
+            return;
+        }
+        Object[] args = new Object[MAX_RATING + 3];
+        args[0] = delta;
+        args[1] = rating * delta;
+        for (int i = 1; i <= MAX_RATING; i++) {
+            args[i + 1] = rating == i ? delta : 0;
+        }
+        args[MAX_RATING + 2] = bookId;
+        jdbcTemplate.update(UPDATE_RATING_SUMMARY_SQL, args);
     }
 }
@@ -0,0 +1,93 @@
+package ru.mrhellko.library.dao;
+
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import ru.mrhellko.library.metrics.QueryMetricsAspect;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Массовая запись строк в таблицу: на PostgreSQL через COPY ... FROM STDIN в формате CSV,
+ * на остальных базах (H2 в тестах) пакетным insert. Запись идёт через соединение текущей транзакции.
+ */
+@Service
+class BulkWriter {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private QueryMetricsAspect queryMetricsAspect;
+    private volatile Boolean copySupported;
+
+    /**
+     * @param copySql   COPY таблицы с теми же колонками в том же порядке, что и insertSql
+     * @param insertSql insert с параметрами для пакетной записи
+     */
+    void write(String copySql, String insertSql, List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        if (isCopySupported()) {
+            String csv = toCsv(rows);
+            //ConnectionCallback не содержит текста запроса, поэтому аспект его не замеряет
+            queryMetricsAspect.measureUpdate(copySql, () -> jdbcTemplate.execute(
+                    (ConnectionCallback<Long>) connection -> copyIn(connection, copySql, csv)));
+        } else {
+            jdbcTemplate.batchUpdate(insertSql, rows);
+        }
+    }
+
+    private static long copyIn(Connection connection, String copySql, String csv) throws SQLException {
+        try {
+            return connection.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql, new StringReader(csv));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean isCopySupported() {
+        Boolean supported = copySupported;
+        if (supported == null) {
+            supported = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                    connection.isWrapperFor(PGConnection.class));
+            copySupported = supported;
+        }
+        return Boolean.TRUE.equals(supported);
+    }
+
+    private static String toCsv(List<Object[]> rows) {
+        StringBuilder csv = new StringBuilder();
+        for (Object[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    csv.append(',');
+                }
+                appendCsvValue(csv, row[i]);
+            }
+            csv.append('\n');
+        }
+        return csv.toString();
+    }
+
+    /**
+     * Пустое значение без кавычек COPY читает как NULL, строки всегда в кавычках, чтобы пустая строка
+     * осталась пустой строкой.
+     */
+    private static void appendCsvValue(StringBuilder csv, Object value) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof String string) {
+            csv.append('"').append(string.replace("\"", "\"\"")).append('"');
+        } else {
+            csv.append(value);
+        }
+    }
+}
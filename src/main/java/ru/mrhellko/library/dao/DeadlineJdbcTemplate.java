@@ -0,0 +1,32 @@
+package ru.mrhellko.library.dao;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+//Внутри withDeadline остаток срока становится таймаутом каждого запроса
+public class DeadlineJdbcTemplate extends JdbcTemplate {
+    private static final ScopedValue<Long> DEADLINE = ScopedValue.newInstance();
+
+    public DeadlineJdbcTemplate(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    public static <T, X extends Throwable> T withDeadline(long deadline, ScopedValue.CallableOp<? extends T, X> op)
+            throws X {
+        return ScopedValue.where(DEADLINE, deadline).call(op);
+    }
+
+    @Override
+    protected void applyStatementSettings(Statement stmt) throws SQLException {
+        super.applyStatementSettings(stmt);
+        if (DEADLINE.isBound()) {
+            //Таймаут задаётся в целых секундах, точный срок ждёт вызывающий код
+            long remaining = DEADLINE.get() - System.nanoTime();
+            stmt.setQueryTimeout((int) Math.max(1, Math.ceilDiv(remaining, TimeUnit.SECONDS.toNanos(1))));
+        }
+    }
+}
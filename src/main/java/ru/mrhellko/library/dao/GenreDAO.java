@@ -1,12 +1,16 @@
 package ru.mrhellko.library.dao;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import ru.mrhellko.library.Entity.Genre;
+import ru.mrhellko.library.configuration.CacheConfiguration;
 import ru.mrhellko.library.dto.BookGenreDTO;
 
 import java.util.*;
@@ -16,7 +20,7 @@ public class GenreDAO {
     private static final String GET_ALL_GENRES_SQL = "select g.id, g.genre_name from genres g";
     private static final String GET_GENRE_BY_ID_SQL = "select g.id, g.genre_name from genres g where g.id = ?";
     private static final String UPDATE_GENRE_BY_ID_SQL = "update genres set genre_name = ? where id = ?";
-    private static final String GET_NEXT_SEQUENCE_ID_SQL = "select nextval('genres_seq') as id";
+    private static final String SEQUENCE_NAME = "genres_seq";
     private static final String SAVE_GENRE_SQL = "insert into genres (id, genre_name) values (?, ?)";
     private static final String DELETE_GENRE_BY_ID_SQL = "delete from genres where id = ?";
     private static final String GET_GENRES_FOR_BOOKS_SQL = """
@@ -27,9 +31,12 @@ public class GenreDAO {
                             left join books b
                                 on bg.book_id = b.id
                         where b.id IN (:bookIds)""";
+    private static final String GET_EXISTING_GENRE_IDS_SQL = "select g.id from genres g where g.id IN (:ids)";
     @Autowired
     private JdbcTemplate jdbcTemplate;
     @Autowired
+    private IdAllocator idAllocator;
+    @Autowired
     private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
     private final RowMapper<Genre> genreRowMapper = (resultSet, _) -> {
         final Genre genre = new Genre();
@@ -46,10 +53,12 @@ public class GenreDAO {
     };
     private final RowMapper<Long> idRowMapper = (resultSet, _) -> (Long) resultSet.getLong("id");
 
+    @Cacheable(cacheNames = CacheConfiguration.ALL_GENRES_CACHE, key = "'all'")
     public List<Genre> getAllGenres() {
         return jdbcTemplate.query(GET_ALL_GENRES_SQL, genreRowMapper);
     }
 
+    @Cacheable(cacheNames = CacheConfiguration.GENRES_CACHE, key = "#id", unless = "#result == null")
     public Genre getGenreById(Long id) {
         try {
             return jdbcTemplate.queryForObject(
@@ -62,16 +71,25 @@ public class GenreDAO {
         }
     }
 
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfiguration.GENRES_CACHE, key = "#genre.id"),
+            @CacheEvict(cacheNames = CacheConfiguration.ALL_GENRES_CACHE, allEntries = true)
+    })
     public void updateGenre(Genre genre) {
         jdbcTemplate.update(UPDATE_GENRE_BY_ID_SQL, genre.getGenreName(), genre.getId());
     }
 
+    @CacheEvict(cacheNames = CacheConfiguration.ALL_GENRES_CACHE, allEntries = true)
     public Genre saveGenre(Genre genre) {
-        genre.setId(jdbcTemplate.queryForObject(GET_NEXT_SEQUENCE_ID_SQL, idRowMapper));
+        genre.setId(idAllocator.nextId(SEQUENCE_NAME));
         jdbcTemplate.update(SAVE_GENRE_SQL, genre.getId(), genre.getGenreName());
         return genre;
     }
 
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfiguration.GENRES_CACHE, key = "#id"),
+            @CacheEvict(cacheNames = CacheConfiguration.ALL_GENRES_CACHE, allEntries = true)
+    })
     public int deleteGenreById(Long id) {
         return jdbcTemplate.update(DELETE_GENRE_BY_ID_SQL, id);
     }
@@ -84,4 +102,19 @@ public class GenreDAO {
         params.put("bookIds", bookIds);
         return namedParameterJdbcTemplate.query(GET_GENRES_FOR_BOOKS_SQL, params, bookGenreDTORowMapper);
     }
+
+    /**
+     * Возвращает те id из набора, для которых нет жанра, одним запросом на весь набор.
+     */
+    public Set<Long> getMissingGenreIds(Set<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("ids", ids);
+        List<Long> existingIds = namedParameterJdbcTemplate.query(GET_EXISTING_GENRE_IDS_SQL, params, idRowMapper);
+        Set<Long> missingIds = new HashSet<>(ids);
+        existingIds.forEach(missingIds::remove);
+        return missingIds;
+    }
 }
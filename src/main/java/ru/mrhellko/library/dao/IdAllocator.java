@@ -0,0 +1,68 @@
+package ru.mrhellko.library.dao;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Выдаёт id для новых записей блоками из последовательностей базы данных (pooled hi-lo).
+ * <p>
+ * Последовательности увеличиваются на {@link #BLOCK_SIZE}, поэтому один nextval резервирует
+ * за экземпляром приложения диапазон [value, value + BLOCK_SIZE - 1]. Id из диапазона выдаются
+ * из памяти без блокировок, к базе данных обращаемся только когда диапазон закончился.
+ * Разные экземпляры приложения получают разные значения nextval и не пересекаются по id.
+ */
+@Service
+public class IdAllocator {
+    /**
+     * Должен совпадать с INCREMENT BY последовательностей в changelog.
+     */
+    public static final int BLOCK_SIZE = 50;
+    private static final String GET_NEXT_SEQUENCE_VALUE_SQL = "select nextval('%s')";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+    public long nextId(String sequenceName) {
+        return pools.computeIfAbsent(sequenceName, Pool::new).nextId();
+    }
+
+    private record Block(AtomicLong next, long max) {
+    }
+
+    private class Pool {
+        private final String sql;
+        private volatile Block block = new Block(new AtomicLong(1), 0);
+
+        private Pool(String sequenceName) {
+            this.sql = GET_NEXT_SEQUENCE_VALUE_SQL.formatted(sequenceName);
+        }
+
+        private long nextId() {
+            while (true) {
+                Block current = block;
+                long id = current.next().getAndIncrement();
+                if (id <= current.max()) {
+                    return id;
+                }
+                refill(current);
+            }
+        }
+
+        private synchronized void refill(Block exhausted) {
+            if (block != exhausted) {
+                return;
+            }
+            Long start = jdbcTemplate.queryForObject(sql, Long.class);
+            if (start == null) {
+                throw new IllegalStateException("Sequence returned null: " + sql);
+            }
+            block = new Block(new AtomicLong(start), start + BLOCK_SIZE - 1);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package ru.mrhellko.library.dao;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+//PostgreSQL возвращает типизированный массив, H2 - Object[], пустая агрегация даёт null
+final class SqlArrays {
+    private SqlArrays() {
+    }
+
+    static List<Long> getLongs(ResultSet resultSet, String columnLabel) throws SQLException {
+        List<Long> values = new ArrayList<>();
+        for (Object value : getElements(resultSet, columnLabel)) {
+            values.add(((Number) value).longValue());
+        }
+        return values;
+    }
+
+    static List<String> getStrings(ResultSet resultSet, String columnLabel) throws SQLException {
+        List<String> values = new ArrayList<>();
+        for (Object value : getElements(resultSet, columnLabel)) {
+            values.add((String) value);
+        }
+        return values;
+    }
+
+    private static Object[] getElements(ResultSet resultSet, String columnLabel) throws SQLException {
+        Array array = resultSet.getArray(columnLabel);
+        if (array == null) {
+            return new Object[0];
+        }
+        try {
+            return (Object[]) array.getArray();
+        } finally {
+            array.free();
+        }
+    }
+}
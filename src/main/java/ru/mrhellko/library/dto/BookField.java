@@ -0,0 +1,58 @@
+package ru.mrhellko.library.dto;
+
+import java.util.*;
+
+/**
+ * Поля BookWithAverageRatingDTO, которые можно запросить параметром fields, например ?fields=id,bookName.
+ * Авторы, жанры и средняя оценка читаются из БД, только если запрошены.
+ */
+public enum BookField {
+    ID("id"),
+    BOOK_NAME("bookName"),
+    AUTHORS("authors"),
+    GENRES("genres"),
+    AVERAGE_RATING("averageRating");
+
+    public static final Set<BookField> ALL = Collections.unmodifiableSet(EnumSet.allOf(BookField.class));
+
+    private final String jsonName;
+
+    BookField(String jsonName) {
+        this.jsonName = jsonName;
+    }
+
+    public String getJsonName() {
+        return jsonName;
+    }
+
+    /**
+     * Поля через запятую в именах JSON. Пустой параметр означает все поля, id возвращается всегда.
+     */
+    public static Set<BookField> parse(String fields) throws IllegalArgumentException {
+        if (fields == null || fields.isBlank()) {
+            return ALL;
+        }
+        Set<BookField> bookFields = EnumSet.of(ID);
+        for (String name : fields.split(",")) {
+            bookFields.add(fromJsonName(name.trim()));
+        }
+        return bookFields;
+    }
+
+    public static Set<String> getJsonNames(Set<BookField> bookFields) {
+        Set<String> jsonNames = new HashSet<>();
+        for (BookField bookField : bookFields) {
+            jsonNames.add(bookField.jsonName);
+        }
+        return jsonNames;
+    }
+
+    private static BookField fromJsonName(String jsonName) {
+        for (BookField bookField : values()) {
+            if (bookField.jsonName.equals(jsonName)) {
+                return bookField;
+            }
+        }
+        throw new IllegalArgumentException("Unknown book field: " + jsonName);
+    }
+}
@@ -0,0 +1,19 @@
+package ru.mrhellko.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookGenreRatingDTO {
+    private Long bookId;
+    private String bookName;
+    private List<Long> genreIds = new ArrayList<>();
+    private Long reviewCount;
+    private Long ratingSum;
+}
@@ -0,0 +1,19 @@
+package ru.mrhellko.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookPageDTO {
+    private List<BookWithAverageRatingDTO> books = new ArrayList<>();
+    /**
+     * id последней книги страницы, если за ней есть ещё книги, иначе null.
+     */
+    private Long nextCursor;
+}
@@ -0,0 +1,14 @@
+package ru.mrhellko.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookRatingDTO {
+    private Long bookId;
+    private Long reviewCount;
+    private Long ratingSum;
+}
@@ -0,0 +1,19 @@
+package ru.mrhellko.library.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+@Data
+@NoArgsConstructor
+public class BookRatingDistributionDTO {
+    private Long bookId;
+    private Long reviewCount;
+    private Float averageRating;
+    /**
+     * Количество отзывов по каждой оценке от 1 до 10.
+     */
+    private Map<Integer, Long> ratings = new TreeMap<>();
+}
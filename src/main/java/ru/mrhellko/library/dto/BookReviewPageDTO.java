@@ -0,0 +1,19 @@
+package ru.mrhellko.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookReviewPageDTO {
+    private List<BookReviewByBookIdDTO> reviews = new ArrayList<>();
+    /**
+     * id последнего (самого старого) отзыва страницы, если за ним есть ещё отзывы, иначе null.
+     */
+    private Long nextCursor;
+}
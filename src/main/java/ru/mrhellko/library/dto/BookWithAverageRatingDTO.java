@@ -1,5 +1,6 @@
 package ru.mrhellko.library.dto;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
 import lombok.Data;
 import ru.mrhellko.library.Entity.Author;
 import ru.mrhellko.library.Entity.Book;
@@ -7,8 +8,14 @@ import ru.mrhellko.library.Entity.Genre;
 
 import java.util.List;
 
+/**
+ * Поля в JSON отбираются фильтром FIELDS_FILTER по параметру fields, без параметра выводятся все поля.
+ */
 @Data
+@JsonFilter(BookWithAverageRatingDTO.FIELDS_FILTER)
 public class BookWithAverageRatingDTO {
+    public static final String FIELDS_FILTER = "bookFields";
+
     private Long id;
 
     private String bookName;
@@ -0,0 +1,20 @@
+package ru.mrhellko.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportErrorDTO {
+    /**
+     * Номер пачки, начиная с 0.
+     */
+    private int chunk;
+    /**
+     * Номер записи во входных данных, начиная с 0, или null, если ошибка относится ко всей пачке.
+     */
+    private Long record;
+    private String message;
+}
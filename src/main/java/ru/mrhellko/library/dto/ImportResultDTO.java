@@ -0,0 +1,18 @@
+package ru.mrhellko.library.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class ImportResultDTO {
+    private long imported;
+    private long rejected;
+    /**
+     * Первые ошибки импорта, остальные учитываются только в rejected.
+     */
+    private List<ImportErrorDTO> errors = new ArrayList<>();
+}
@@ -0,0 +1,17 @@
+package ru.mrhellko.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TopBookDTO {
+    private Long id;
+    private String bookName;
+    private Long reviewCount;
+    private Float averageRating;
+    //Средняя, сглаженная к средней оценке каталога
+    private Double score;
+}
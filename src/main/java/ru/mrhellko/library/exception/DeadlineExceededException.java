@@ -0,0 +1,13 @@
+package ru.mrhellko.library.exception;
+
+import java.time.Duration;
+
+public class DeadlineExceededException extends RuntimeException {
+    public DeadlineExceededException(Duration timeout) {
+        super(getMessage(timeout));
+    }
+
+    private static String getMessage(Duration timeout) {
+        return "Request deadline of " + timeout.toMillis() + " ms exceeded";
+    }
+}
@@ -0,0 +1,75 @@
+package ru.mrhellko.library.limiter;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограничение числа одновременных запросов, лимит подбирается по схеме AIMD.
+ */
+public class AdaptiveLimiter {
+    static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final AtomicInteger limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong lastDecreaseNanos = new AtomicLong(System.nanoTime() - 1);
+    private final LongAdder rejected = new LongAdder();
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, Duration latencyThreshold) {
+        if (minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.limit = new AtomicInteger(initialLimit);
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit.get()) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release(long startNanos, long endNanos, boolean failed) {
+        int current = inFlight.getAndDecrement();
+        if (failed || endNanos - startNanos > latencyThresholdNanos) {
+            //Запросы, начатые до предыдущего снижения, лимит больше не снижают
+            long lastDecrease = lastDecreaseNanos.get();
+            if (startNanos - lastDecrease > 0 && lastDecreaseNanos.compareAndSet(lastDecrease, endNanos)) {
+                limit.updateAndGet(value -> Math.max(minLimit, (int) (value * BACKOFF_RATIO)));
+            }
+        } else if (current * 2 >= limit.get()) {
+            //При малой загрузке быстрые ответы ничего не говорят о запасе БД
+            limit.updateAndGet(value -> Math.min(maxLimit, value + 1));
+        }
+    }
+
+    //Для запросов, время которых не говорит о состоянии БД
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return limit.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
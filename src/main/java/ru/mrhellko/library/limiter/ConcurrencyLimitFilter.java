@@ -0,0 +1,181 @@
+package ru.mrhellko.library.limiter;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.mrhellko.library.configuration.LimiterProperties;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Запрос сверх текущего лимита сразу получает 503 с Retry-After, чтение и запись ограничиваются отдельно.
+ */
+@Component
+@EnableConfigurationProperties(LimiterProperties.class)
+public class ConcurrencyLimitFilter extends OncePerRequestFilter implements MeterBinder {
+    public static final String LIMIT_GAUGE = "library.limiter.limit";
+    public static final String IN_FLIGHT_GAUGE = "library.limiter.inflight";
+    public static final String REJECTED_COUNTER = "library.limiter.rejected";
+    private static final String ACTUATOR_PATH = "/actuator";
+    //Ставится обработчиком долгого запроса, поэтому совпадает с сопоставлением пути в Spring MVC
+    public static final String LONG_RUNNING_ATTRIBUTE = ConcurrencyLimitFilter.class.getName() + ".longRunning";
+
+    private final boolean enabled;
+    private final AdaptiveLimiter readLimiter;
+    private final AdaptiveLimiter writeLimiter;
+    private final String retryAfterSeconds;
+
+    public ConcurrencyLimitFilter(LimiterProperties limiterProperties) {
+        this.enabled = limiterProperties.isEnabled();
+        this.readLimiter = createLimiter(limiterProperties.getRead());
+        this.writeLimiter = createLimiter(limiterProperties.getWrite());
+        this.retryAfterSeconds = String.valueOf(Math.max(1, limiterProperties.getRetryAfter().toSeconds()));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bind(registry, "read", readLimiter);
+        bind(registry, "write", writeLimiter);
+    }
+
+    AdaptiveLimiter getReadLimiter() {
+        return readLimiter;
+    }
+
+    AdaptiveLimiter getWriteLimiter() {
+        return writeLimiter;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || request.getRequestURI().startsWith(request.getContextPath() + ACTUATOR_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        boolean read = isRead(request);
+        AdaptiveLimiter limiter = read ? readLimiter : writeLimiter;
+        long start = System.nanoTime();
+        if (!limiter.tryAcquire()) {
+            reject(response, read);
+            return;
+        }
+        boolean async = false;
+        boolean failed = true;
+        try {
+            filterChain.doFilter(request, response);
+            failed = response.getStatus() >= HttpStatus.INTERNAL_SERVER_ERROR.value();
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseListener(limiter, start, isLongRunning(request)));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                release(limiter, start, isLongRunning(request), failed);
+            }
+        }
+    }
+
+    private static void release(AdaptiveLimiter limiter, long start, boolean longRunning, boolean failed) {
+        if (longRunning) {
+            limiter.release();
+        } else {
+            limiter.release(start, System.nanoTime(), failed);
+        }
+    }
+
+    private void reject(HttpServletResponse response, boolean read) throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write("Too many concurrent " + (read ? "read" : "write") + " requests, retry later");
+    }
+
+    private static boolean isRead(HttpServletRequest request) {
+        String method = request.getMethod();
+        return HttpMethod.GET.matches(method) || HttpMethod.HEAD.matches(method) || HttpMethod.OPTIONS.matches(method);
+    }
+
+    public static void markLongRunning(HttpServletRequest request) {
+        request.setAttribute(LONG_RUNNING_ATTRIBUTE, Boolean.TRUE);
+    }
+
+    private static boolean isLongRunning(HttpServletRequest request) {
+        return Boolean.TRUE.equals(request.getAttribute(LONG_RUNNING_ATTRIBUTE));
+    }
+
+    private static AdaptiveLimiter createLimiter(LimiterProperties.Limit limit) {
+        return new AdaptiveLimiter(limit.getInitialLimit(), limit.getMinLimit(), limit.getMaxLimit(),
+                limit.getLatencyThreshold());
+    }
+
+    private static void bind(MeterRegistry registry, String kind, AdaptiveLimiter limiter) {
+        Gauge.builder(LIMIT_GAUGE, limiter, AdaptiveLimiter::getLimit)
+                .tag("kind", kind)
+                .register(registry);
+        Gauge.builder(IN_FLIGHT_GAUGE, limiter, AdaptiveLimiter::getInFlight)
+                .tag("kind", kind)
+                .register(registry);
+        FunctionCounter.builder(REJECTED_COUNTER, limiter, AdaptiveLimiter::getRejected)
+                .tag("kind", kind)
+                .register(registry);
+    }
+
+    //Контейнер вызывает onComplete и после ошибки или таймаута
+    private static class ReleaseListener implements AsyncListener {
+        private final AdaptiveLimiter limiter;
+        private final long start;
+        private final boolean longRunning;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean failed;
+
+        private ReleaseListener(AdaptiveLimiter limiter, long start, boolean longRunning) {
+            this.limiter = limiter;
+            this.start = start;
+            this.longRunning = longRunning;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            if (released.compareAndSet(false, true)) {
+                HttpServletResponse response = (HttpServletResponse) event.getSuppliedResponse();
+                boolean serverError = response != null && response.getStatus() >= HttpStatus.INTERNAL_SERVER_ERROR.value();
+                release(limiter, start, longRunning, failed || serverError);
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            failed = true;
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            failed = true;
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            //Повторный startAsync при асинхронном dispatch снимает слушателей, регистрируем себя снова
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package ru.mrhellko.library.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Время выполнения и количество строк для каждого SQL-запроса DAO.
+ * <p>
+ * Оборачивает вызовы JdbcTemplate и NamedParameterJdbcTemplate, поэтому места вызова в DAO не меняются.
+ * Запрос помечается именем константы, в которой лежит его текст, например BookDAO.GET_BOOK_BY_ID_SQL.
+ * Константа-шаблон для String.format сопоставляется по тексту до первой подстановки.
+ * Тексты, которых нет среди констант, попадают под общее имя {@link #UNKNOWN_QUERY}, чтобы число тегов
+ * оставалось ограниченным. NamedParameterJdbcTemplate выполняет запрос через JdbcTemplate, вложенный вызов
+ * не замеряется повторно.
+ */
+@Aspect
+@Component
+public class QueryMetricsAspect {
+    public static final String QUERY_TIMER = "library.db.query";
+    public static final String QUERY_ROWS = "library.db.query.rows";
+    public static final String UNKNOWN_QUERY = "unknown";
+    private static final String DAO_PACKAGE = "ru.mrhellko.library.dao";
+    private static final String SQL_CONSTANT_SUFFIX = "_SQL";
+    private static final String TEMPLATE_PLACEHOLDER = "%s";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+    private final Map<String, String> queryNames = scanQueryNames();
+    private final Map<String, String> templateNames = getTemplateNames(queryNames);
+    private final ThreadLocal<Boolean> measuring = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    @Around("execution(* org.springframework.jdbc.core.JdbcOperations.*(String, ..))"
+            + " || execution(* org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations.*(String, ..))")
+    public Object measure(ProceedingJoinPoint joinPoint) throws Throwable {
+        return measure((String) joinPoint.getArgs()[0], joinPoint::proceed, QueryMetricsAspect::countRows);
+    }
+
+    /**
+     * Замер операции, которая идёт мимо методов JdbcTemplate с текстом запроса, например COPY через
+     * ConnectionCallback.
+     */
+    public long measureUpdate(String sql, LongSupplier update) {
+        try {
+            return (Long) measure(sql, update::getAsLong, result -> (Long) result);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+    private Object measure(String sql, Operation operation, ToLongFunction<Object> rowCounter) throws Throwable {
+        if (measuring.get()) {
+            return operation.run();
+        }
+        String queryName = getQueryName(sql);
+        String outcome = "success";
+        measuring.set(Boolean.TRUE);
+        long start = System.nanoTime();
+        try {
+            Object result = operation.run();
+            recordRows(queryName, rowCounter.applyAsLong(result));
+            return result;
+        } catch (Throwable e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            measuring.set(Boolean.FALSE);
+            Timer.builder(QUERY_TIMER)
+                    .tag("query", queryName)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private String getQueryName(String sql) {
+        String queryName = queryNames.get(sql);
+        if (queryName != null) {
+            return queryName;
+        }
+        for (Map.Entry<String, String> template : templateNames.entrySet()) {
+            if (sql.startsWith(template.getKey())) {
+                return template.getValue();
+            }
+        }
+        return UNKNOWN_QUERY;
+    }
+
+    /**
+     * Для выборок считаются прочитанные строки, для изменений - затронутые.
+     * Потоки (queryForStream) читаются после возврата из метода, поэтому строки для них не считаются.
+     */
+    private static long countRows(Object result) {
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        } else if (result instanceof Integer affected) {
+            return affected;
+        } else if (result instanceof int[] batch) {
+            long rows = 0;
+            for (int affected : batch) {
+                rows += Math.max(affected, 0);
+            }
+            return rows;
+        } else if (result instanceof int[][] batches) {
+            long rows = 0;
+            for (int[] batch : batches) {
+                for (int affected : batch) {
+                    rows += Math.max(affected, 0);
+                }
+            }
+            return rows;
+        } else if (result == null || result instanceof Stream<?>) {
+            return -1;
+        } else {
+            return 1;
+        }
+    }
+
+    private void recordRows(String queryName, long rows) {
+        if (rows < 0) {
+            return;
+        }
+        DistributionSummary.builder(QUERY_ROWS)
+                .tag("query", queryName)
+                .register(meterRegistry)
+                .record(rows);
+    }
+
+    private static Map<String, String> getTemplateNames(Map<String, String> queryNames) {
+        Map<String, String> templateNames = new HashMap<>();
+        queryNames.forEach((sql, queryName) -> {
+            int placeholder = sql.indexOf(TEMPLATE_PLACEHOLDER);
+            if (placeholder > 0) {
+                templateNames.put(sql.substring(0, placeholder), queryName);
+            }
+        });
+        return templateNames;
+    }
+
+    private static Map<String, String> scanQueryNames() {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(Service.class));
+        Map<String, String> names = new HashMap<>();
+        for (BeanDefinition beanDefinition : scanner.findCandidateComponents(DAO_PACKAGE)) {
+            Class<?> daoClass = ClassUtils.resolveClassName(
+                    beanDefinition.getBeanClassName(), QueryMetricsAspect.class.getClassLoader());
+            for (Field field : daoClass.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) && Modifier.isFinal(modifiers)
+                        && field.getType() == String.class && field.getName().endsWith(SQL_CONSTANT_SUFFIX)) {
+                    field.setAccessible(true);
+                    try {
+                        names.put((String) field.get(null), daoClass.getSimpleName() + "." + field.getName());
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    private interface Operation {
+        Object run() throws Throwable;
+    }
+}
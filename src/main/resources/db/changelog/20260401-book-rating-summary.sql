@@ -0,0 +1,45 @@
+--liquibase formatted sql
+
+--changeset EA:1
+--Сводка по оценкам книги: количество, сумма и гистограмма оценок от 1 до 10
+CREATE TABLE book_rating_summary
+(
+    book_id      bigint PRIMARY KEY,
+    review_count bigint default 0 not null,
+    rating_sum   bigint default 0 not null,
+    rating_1     bigint default 0 not null,
+    rating_2     bigint default 0 not null,
+    rating_3     bigint default 0 not null,
+    rating_4     bigint default 0 not null,
+    rating_5     bigint default 0 not null,
+    rating_6     bigint default 0 not null,
+    rating_7     bigint default 0 not null,
+    rating_8     bigint default 0 not null,
+    rating_9     bigint default 0 not null,
+    rating_10    bigint default 0 not null,
+
+    CONSTRAINT BOOK_RATING_SUMMARY_BOOK_ID_fk
+        FOREIGN KEY (book_id) REFERENCES books (id) ON DELETE CASCADE
+);
+
+--changeset EA:2
+--Заполнение сводки по уже существующим отзывам
+INSERT INTO book_rating_summary (book_id, review_count, rating_sum,
+                                 rating_1, rating_2, rating_3, rating_4, rating_5,
+                                 rating_6, rating_7, rating_8, rating_9, rating_10)
+SELECT b.id,
+       count(r.rating),
+       coalesce(sum(r.rating), 0),
+       count(case when r.rating = 1 then 1 end),
+       count(case when r.rating = 2 then 1 end),
+       count(case when r.rating = 3 then 1 end),
+       count(case when r.rating = 4 then 1 end),
+       count(case when r.rating = 5 then 1 end),
+       count(case when r.rating = 6 then 1 end),
+       count(case when r.rating = 7 then 1 end),
+       count(case when r.rating = 8 then 1 end),
+       count(case when r.rating = 9 then 1 end),
+       count(case when r.rating = 10 then 1 end)
+FROM books b
+         LEFT JOIN book_reviews r ON r.book_id = b.id
+GROUP BY b.id;
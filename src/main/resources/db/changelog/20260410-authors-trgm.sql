@@ -0,0 +1,8 @@
+--liquibase formatted sql
+
+--changeset EA:1 dbms:postgresql
+--Триграммы нужны для индексного поиска по подстроке (ilike '%...%'), в H2 поиск остаётся последовательным
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+--changeset EA:2 dbms:postgresql
+CREATE INDEX idx_authors_author_name_trgm ON authors USING gin (author_name gin_trgm_ops);
@@ -0,0 +1,8 @@
+--liquibase formatted sql
+
+--changeset EA:1
+--Шаг последовательностей совпадает с IdAllocator.BLOCK_SIZE: один nextval резервирует блок из 50 id
+ALTER SEQUENCE books_seq INCREMENT BY 50;
+ALTER SEQUENCE book_reviews_seq INCREMENT BY 50;
+ALTER SEQUENCE authors_seq INCREMENT BY 50;
+ALTER SEQUENCE genres_seq INCREMENT BY 50;
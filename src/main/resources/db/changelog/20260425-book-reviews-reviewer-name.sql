@@ -0,0 +1,5 @@
+--liquibase formatted sql
+
+--changeset EA:1
+--Поиск отзывов по имени рецензента (GET /reviews?reviewerName=), id в индексе задаёт порядок выдачи
+CREATE INDEX idx_book_reviews_reviewer_name ON book_reviews (reviewer_name, id);
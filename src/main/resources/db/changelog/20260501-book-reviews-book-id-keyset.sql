@@ -0,0 +1,9 @@
+--liquibase formatted sql
+
+--changeset EA:1
+--Отзывы книги отдаются страницами от новых к старым: where book_id = ? and id < ? order by id desc
+CREATE INDEX idx_book_reviews_book_id_id ON book_reviews (book_id, id desc);
+
+--changeset EA:2
+--Покрывается префиксом idx_book_reviews_book_id_id
+DROP INDEX idx_book_reviews_book_id;
@@ -9,6 +9,9 @@ import ru.mrhellko.library.Entity.Author;
 import ru.mrhellko.library.dao.AuthorDAO;
 import ru.mrhellko.library.exception.NotFoundException;
 
+import java.util.List;
+import java.util.Set;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
@@ -20,6 +23,9 @@ public class AuthorServiceTest {
     @Mock
     private AuthorDAO authorDAO;
 
+    @Mock
+    private BookCacheInvalidator bookCacheInvalidator;
+
     @InjectMocks
     private AuthorService authorService;
 
@@ -48,6 +54,21 @@ public class AuthorServiceTest {
         Author foundAuthor = authorService.getAuthorById(1L);
         assertThat(foundAuthor.getId()).isEqualTo(1);
         assertThat(foundAuthor.getAuthorName()).isEqualTo("name");
+        assertThat(foundAuthor).isNotSameAs(author);
+    }
+
+    /**
+     * Авторы по списку id возвращаются в порядке запроса, ненайденные id пропускаются.
+     */
+    @Test
+    void getAuthorsByIdsTest() {
+        when(authorDAO.getAuthorsByIds(Set.of(2L, 1L, 3L)))
+                .thenReturn(List.of(new Author(1L, "a1"), new Author(2L, "a2")));
+
+        List<Author> authors = authorService.getAuthorsByIds(List.of(2L, 1L, 3L));
+        assertThat(authors)
+                .extracting(Author::getId)
+                .containsExactly(2L, 1L);
     }
 
     /**
@@ -68,7 +89,7 @@ public class AuthorServiceTest {
     }
 
     /**
-     * Если автор найден, то поля обновляются и update вызывается.
+     * Если автор найден, то поля обновляются и update вызывается, а объект из DAO (возможно, из кэша) не меняется.
      */
     @Test
     void updateAuthorFoundTest() {
@@ -85,7 +106,11 @@ public class AuthorServiceTest {
         assertThat(updated.getId()).isEqualTo(1L);
         assertThat(updated.getAuthorName()).isEqualTo("name");
 
-        verify(authorDAO).updateAuthor(existing);
+        assertThat(existing.getAuthorName()).isNull();
+
+        verify(authorDAO).updateAuthor(new Author(1L, "name"));
+        verify(bookCacheInvalidator).evictAuthor(1L);
+        verify(bookCacheInvalidator).evictBooksOfAuthor(1L);
     }
 
     /**
@@ -126,5 +151,7 @@ public class AuthorServiceTest {
         authorService.deleteAuthor(1L);
 
         verify(authorDAO).deleteAuthorById(1L);
+        verify(bookCacheInvalidator).evictBooksOfAuthor(1L);
+        verify(bookCacheInvalidator).evictAuthor(1L);
     }
 }
@@ -4,28 +4,40 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
 import ru.mrhellko.library.Entity.Author;
 import ru.mrhellko.library.Entity.Book;
-import ru.mrhellko.library.Entity.BookReview;
 import ru.mrhellko.library.Entity.Genre;
 import ru.mrhellko.library.dao.AuthorDAO;
 import ru.mrhellko.library.dao.BookDAO;
 import ru.mrhellko.library.dao.BookReviewDAO;
 import ru.mrhellko.library.dao.GenreDAO;
 import ru.mrhellko.library.dto.BookAuthorDTO;
+import ru.mrhellko.library.dto.BookField;
 import ru.mrhellko.library.dto.BookGenreDTO;
+import ru.mrhellko.library.dto.BookPageDTO;
+import ru.mrhellko.library.dto.BookRatingDTO;
 import ru.mrhellko.library.dto.BookWithAverageRatingDTO;
+import ru.mrhellko.library.exception.DeadlineExceededException;
 import ru.mrhellko.library.exception.NotFoundException;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -43,86 +55,54 @@ class BookAssemblerTest {
     @Mock
     private GenreDAO genreDAO;
 
+    @Mock
+    private BookLeaderboard bookLeaderboard;
+
+    @Mock
+    private BookCacheInvalidator bookCacheInvalidator;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private CacheManager cacheManager = new ConcurrentMapCacheManager();
+
     @InjectMocks
     private BookAssembler bookAssembler;
 
     /**
-     * Если книга по id не найдена, то возвращается null и запросов к отзывам не происходит.
+     * Если книга по id не найдена, то возвращается null и других запросов не происходит.
      */
     @Test
     void getFullBookWithAverageRatingDTONotFoundTest() {
-        when(bookDAO.getBookById(1L)).thenReturn(null);
+        when(bookDAO.getFullBookById(1L)).thenReturn(null);
 
         BookWithAverageRatingDTO dto = bookAssembler.getFullBookWithAverageRatingDTO(1L);
         assertThat(dto).isNull();
 
-        verify(bookDAO).getBookById(1L);
-        verifyNoMoreInteractions(bookReviewDAO);
+        verify(bookDAO).getFullBookById(1L);
+        verifyNoInteractions(bookReviewDAO, authorDAO, genreDAO);
     }
 
     /**
-     * Если книга найдена и есть отзывы, то averageRating рассчитывается как среднее значение рейтингов.
+     * Книга по id читается одним запросом DAO, авторы, жанры и оценки отдельно не запрашиваются.
      */
     @Test
-    void getFullBookWithAverageRatingDTOFoundWithAverageTest() {
+    void getFullBookWithAverageRatingDTOFoundTest() {
         Book book = new Book();
         book.setId(1L);
         book.setBookName("name");
+        book.getAuthors().add(new Author(1L, "a1"));
+        book.getGenres().add(new Genre(1L, "g1"));
+        BookWithAverageRatingDTO expected = new BookWithAverageRatingDTO(book);
+        expected.setAverageRating(7.0f);
 
-        Author a1 = new Author(1L, "a1");
-        Author a2 = new Author(2L, "a2");
-
-        Genre g1 = new Genre(1L, "g1");
-        Genre g2 = new Genre(2L, "g2");
-
-        BookReview r1 = new BookReview();
-        r1.setRating((byte) 8);
-        BookReview r2 = new BookReview();
-        r2.setRating((byte) 6);
-
-        when(bookDAO.getBookById(1L)).thenReturn(book);
-        when(bookReviewDAO.getReviewByBookId(1L)).thenReturn(Arrays.asList(r1, r2));
-        when(authorDAO.getAuthorsForBooks(Set.of(1L))).thenReturn(Arrays.asList(
-                new BookAuthorDTO(1L, 1L, "a1"),
-                new BookAuthorDTO(1L, 2L, "a2")));
-        when(genreDAO.getGenresForBooks(Set.of(1L))).thenReturn(Arrays.asList(
-                new BookGenreDTO(1L, 1L, "g1"),
-                new BookGenreDTO(1L, 2L, "g2")));
+        when(bookDAO.getFullBookById(1L)).thenReturn(expected);
 
         BookWithAverageRatingDTO dto = bookAssembler.getFullBookWithAverageRatingDTO(1L);
-        assertThat(dto).isNotNull();
-        assertThat(dto.getId()).isEqualTo(1L);
-        assertThat(dto.getBookName()).isEqualTo("name");
-        assertThat(dto.getAuthors()).isEqualTo(List.of(a1, a2));
-        assertThat(dto.getGenres()).isEqualTo(List.of(g1, g2));
-        assertThat(dto.getAverageRating()).isEqualTo(7.0f);
-    }
+        assertThat(dto).isSameAs(expected);
 
-    /**
-     * Если книга найдена, но отзывов нет, то averageRating равен null.
-     */
-    @Test
-    void getFullBookWithAverageRatingDTOFoundWithoutReviewsTest() {
-        Book book = new Book();
-        book.setId(1L);
-        book.setBookName("name");
-        List<Author> authors = new ArrayList<>();
-        authors.add(new Author(1L, "author"));
-        book.setAuthors(authors);
-        List<Genre> genres = new ArrayList<>();
-        genres.add(new Genre(1L, "genre"));
-        book.setGenres(genres);
-
-        when(bookDAO.getBookById(1L)).thenReturn(book);
-        when(bookReviewDAO.getReviewByBookId(1L)).thenReturn(Arrays.asList());
-        when(authorDAO.getAuthorsForBooks(Set.of(1L))).thenReturn(Arrays.asList(
-                new BookAuthorDTO(1L, 1L, "author")));
-        when(genreDAO.getGenresForBooks(Set.of(1L))).thenReturn(Arrays.asList(
-                new BookGenreDTO(1L, 1L, "genre")));
-
-        BookWithAverageRatingDTO dto = bookAssembler.getFullBookWithAverageRatingDTO(1L);
-        assertThat(dto).isNotNull();
-        assertThat(dto.getAverageRating()).isNull();
+        verifyNoInteractions(bookReviewDAO, authorDAO, genreDAO);
     }
 
     /**
@@ -142,12 +122,8 @@ class BookAssemblerTest {
         Author a2 = new Author(2L, "a2");
         Genre g2 = new Genre(2L, "g2");
 
-        BookReview r = new BookReview();
-        r.setRating((byte) 10);
-
-        when(bookDAO.getAll()).thenReturn(Arrays.asList(b1, b2));
-        when(bookReviewDAO.getReviewByBookId(1L)).thenReturn(Arrays.asList(r));
-        when(bookReviewDAO.getReviewByBookId(2L)).thenReturn(Arrays.asList());
+        when(bookDAO.getAll(0L, 11)).thenReturn(Arrays.asList(b1, b2));
+        when(bookReviewDAO.getRatingsForBooks(Set.of(1L, 2L))).thenReturn(List.of(new BookRatingDTO(1L, 1L, 10L)));
         when(authorDAO.getAuthorsForBooks(Set.of(1L, 2L))).thenReturn(Arrays.asList(
                 new BookAuthorDTO(1L, 1L, "a1"),
                 new BookAuthorDTO(2L, 2L, "a2")));
@@ -155,7 +131,9 @@ class BookAssemblerTest {
                 new BookGenreDTO(1L, 1L, "g1"),
                 new BookGenreDTO(2L, 2L, "g2")));
 
-        List<BookWithAverageRatingDTO> dtos = bookAssembler.getFullAllBooks();
+        BookPageDTO page = bookAssembler.getFullAllBooks(0L, 10, BookField.ALL);
+        assertThat(page.getNextCursor()).isNull();
+        List<BookWithAverageRatingDTO> dtos = page.getBooks();
         assertThat(dtos).hasSize(2);
         assertThat(dtos)
                 .extracting(BookWithAverageRatingDTO::getId)
@@ -166,6 +144,114 @@ class BookAssemblerTest {
         assertThat(dtos.get(1).getAuthors()).isEqualTo(List.of(a2));
         assertThat(dtos.get(0).getGenres()).isEqualTo(List.of(g1));
         assertThat(dtos.get(1).getGenres()).isEqualTo(List.of(g2));
+
+        verify(bookReviewDAO).getRatingsForBooks(Set.of(1L, 2L));
+        verify(bookReviewDAO, never()).getReviewByBookId(anyLong(), anyLong(), anyInt());
+    }
+
+    /**
+     * Авторы, жанры и оценки, которых нет в fields, не читаются из БД.
+     */
+    @Test
+    void getFullAllBooksOnlyRequestedFieldsTest() {
+        Book b1 = new Book();
+        b1.setId(1L);
+        b1.setBookName("b1");
+
+        when(bookDAO.getAll(0L, 11)).thenReturn(new ArrayList<>(List.of(b1)));
+
+        List<BookWithAverageRatingDTO> dtos = bookAssembler.getFullAllBooks(0L, 10, BookField.parse("bookName")).getBooks();
+        assertThat(dtos)
+                .extracting(BookWithAverageRatingDTO::getBookName)
+                .containsExactly("b1");
+        assertThat(dtos.getFirst().getAverageRating()).isNull();
+        verifyNoInteractions(authorDAO, genreDAO, bookReviewDAO);
+    }
+
+    /**
+     * Если DAO вернул на одну книгу больше limit, то лишняя книга отбрасывается, а её предшественник становится курсором.
+     */
+    @Test
+    void getFullAllBooksNextCursorTest() {
+        Book b1 = new Book();
+        b1.setId(1L);
+        b1.setBookName("b1");
+        Book b2 = new Book();
+        b2.setId(2L);
+        b2.setBookName("b2");
+
+        when(bookDAO.getAll(0L, 2)).thenReturn(new ArrayList<>(List.of(b1, b2)));
+        when(bookReviewDAO.getRatingsForBooks(Set.of(1L))).thenReturn(List.of());
+
+        BookPageDTO page = bookAssembler.getFullAllBooks(0L, 1, BookField.ALL);
+        assertThat(page.getBooks())
+                .extracting(BookWithAverageRatingDTO::getId)
+                .containsExactly(1L);
+        assertThat(page.getNextCursor()).isEqualTo(1L);
+    }
+
+    /**
+     * Если limit вне допустимого диапазона, то выбрасывается IllegalArgumentException и запросов к БД не происходит.
+     */
+    @Test
+    void getFullAllBooksBadLimitTest() {
+        assertThatThrownBy(() -> bookAssembler.getFullAllBooks(0L, BookAssembler.MAX_PAGE_SIZE + 1, BookField.ALL))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> bookAssembler.getFullAllBooks(0L, 0, BookField.ALL))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        verifyNoInteractions(bookDAO);
+    }
+
+    /**
+     * Выгрузка каталога передаёт в consumer книги из курсора вместе с авторами, жанрами и рейтингом.
+     */
+    @Test
+    void exportAllBooksTest() {
+        Book b1 = new Book();
+        b1.setId(1L);
+        b1.setBookName("b1");
+        Book b2 = new Book();
+        b2.setId(2L);
+        b2.setBookName("b2");
+
+        when(bookDAO.streamAll()).thenReturn(Stream.of(b1, b2));
+        when(authorDAO.getAuthorsForBooks(Set.of(1L, 2L))).thenReturn(List.of(
+                new BookAuthorDTO(1L, 1L, "a1")));
+        when(genreDAO.getGenresForBooks(Set.of(1L, 2L))).thenReturn(List.of(
+                new BookGenreDTO(2L, 2L, "g2")));
+        when(bookReviewDAO.getRatingsForBooks(Set.of(1L, 2L))).thenReturn(List.of(new BookRatingDTO(1L, 2L, 9L)));
+
+        List<BookWithAverageRatingDTO> exported = new ArrayList<>();
+        bookAssembler.exportAllBooks(exported::addAll);
+
+        assertThat(exported)
+                .extracting(BookWithAverageRatingDTO::getId)
+                .containsExactly(1L, 2L);
+        assertThat(exported.get(0).getAuthors()).isEqualTo(List.of(new Author(1L, "a1")));
+        assertThat(exported.get(0).getAverageRating()).isEqualTo(4.5f);
+        assertThat(exported.get(1).getGenres()).isEqualTo(List.of(new Genre(2L, "g2")));
+        assertThat(exported.get(1).getAverageRating()).isNull();
+    }
+
+    /**
+     * Если авторы, жанры и оценки не прочитаны за hydrationTimeout, то выбрасывается DeadlineExceededException.
+     */
+    @Test
+    void getFullAllBooksDeadlineExceededTest() {
+        ReflectionTestUtils.setField(bookAssembler, "hydrationTimeout", Duration.ofMillis(50));
+        Book b1 = new Book();
+        b1.setId(1L);
+        b1.setBookName("b1");
+
+        when(bookDAO.getAll(0L, 11)).thenReturn(List.of(b1));
+        when(authorDAO.getAuthorsForBooks(Set.of(1L))).thenAnswer(_ -> {
+            Thread.sleep(5_000);
+            return List.of();
+        });
+
+        assertThatThrownBy(() -> bookAssembler.getFullAllBooks(0L, 10, BookField.ALL))
+                .isInstanceOf(DeadlineExceededException.class);
     }
 
     /**
@@ -211,7 +297,7 @@ class BookAssemblerTest {
         input.setAuthors(List.of(new Author(1L, "a")));
         input.setGenres(List.of(new Genre(1L, "g")));
 
-        when(authorDAO.getAuthorById(1L)).thenReturn(null);
+        when(authorDAO.getMissingAuthorIds(Set.of(1L))).thenReturn(Set.of(1L));
 
         assertThatThrownBy(() -> bookAssembler.updateBook(input, 1L))
                 .isInstanceOf(IllegalArgumentException.class);
@@ -231,8 +317,7 @@ class BookAssemblerTest {
         input.setAuthors(List.of(author));
         input.setGenres(List.of(new Genre(1L, "g")));
 
-        when(authorDAO.getAuthorById(1L)).thenReturn(author);
-        when(genreDAO.getGenreById(1L)).thenReturn(null);
+        when(genreDAO.getMissingGenreIds(Set.of(1L))).thenReturn(Set.of(1L));
 
         assertThatThrownBy(() -> bookAssembler.updateBook(input, 1L))
                 .isInstanceOf(IllegalArgumentException.class);
@@ -240,6 +325,31 @@ class BookAssemblerTest {
         verify(bookDAO, never()).updateBook(any());
     }
 
+    /**
+     * Проверка авторов и жанров выполняется двумя запросами на наборы id, а в ошибке перечислены все ненайденные id.
+     */
+    @Test
+    void updateBookNotFoundManyRelationsTest() {
+        Book input = new Book();
+        input.setBookName("n");
+        input.setAuthors(List.of(new Author(1L, "a"), new Author(2L, "a"), new Author(3L, "a")));
+        input.setGenres(List.of(new Genre(1L, "g"), new Genre(2L, "g")));
+
+        when(authorDAO.getMissingAuthorIds(Set.of(1L, 2L, 3L))).thenReturn(Set.of(2L, 3L));
+        when(genreDAO.getMissingGenreIds(Set.of(1L, 2L))).thenReturn(Set.of(2L));
+
+        assertThatThrownBy(() -> bookAssembler.updateBook(input, 1L))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Bad authors")
+                .hasMessageContaining("2")
+                .hasMessageContaining("3")
+                .hasMessageContaining("Bad genres");
+
+        verify(authorDAO, never()).getAuthorById(anyLong());
+        verify(genreDAO, never()).getGenreById(anyLong());
+        verify(bookDAO, never()).updateBook(any());
+    }
+
     /**
      * Если книга для обновления не найдена, то возвращается null и update не вызывается.
      */
@@ -253,8 +363,6 @@ class BookAssemblerTest {
         input.setGenres(List.of(genre));
 
         when(bookDAO.getBookById(1L)).thenReturn(null);
-        when(authorDAO.getAuthorById(1L)).thenReturn(author);
-        when(genreDAO.getGenreById(1L)).thenReturn(genre);
 
         Book updated = bookAssembler.updateBook(input, 1L);
         assertThat(updated).isNull();
@@ -287,13 +395,9 @@ class BookAssemblerTest {
         when(authorDAO.getAuthorsForBooks(Set.of(1L))).thenReturn(Arrays.asList(
                 new BookAuthorDTO(1L, 1L, "old")
         ));
-        when(authorDAO.getAuthorById(2L)).thenReturn(a2);
-        when(bookDAO.deleteBookAuthor(1L, 1L)).thenReturn(1);
         when(genreDAO.getGenresForBooks(Set.of(1L))).thenReturn(Arrays.asList(
                 new BookGenreDTO(1L, 1L, "old")
         ));
-        when(genreDAO.getGenreById(2L)).thenReturn(g2);
-        when(bookDAO.deleteBookGenre(1L, 1L)).thenReturn(1);
 
         Book updated = bookAssembler.updateBook(input, 1L);
         assertThat(updated).isNotNull();
@@ -303,10 +407,10 @@ class BookAssemblerTest {
         assertThat(updated.getGenres()).isEqualTo(List.of(g2));
 
         verify(bookDAO).updateBook(existing);
-        verify(bookDAO).saveBookAuthor(1L, 2L);
-        verify(bookDAO).deleteBookAuthor(1L, 1L);
-        verify(bookDAO).saveBookGenre(1L, 2L);
-        verify(bookDAO).deleteBookGenre(1L, 1L);
+        verify(bookDAO).saveBookAuthors(1L, Set.of(2L));
+        verify(bookDAO).deleteBookAuthors(1L, Set.of(1L));
+        verify(bookDAO).saveBookGenres(1L, Set.of(2L));
+        verify(bookDAO).deleteBookGenres(1L, Set.of(1L));
     }
 
     /**
@@ -328,12 +432,11 @@ class BookAssemblerTest {
         saved.setGenres(List.of(genre));
 
         when(bookDAO.saveBook(input)).thenReturn(saved);
-        when(authorDAO.getAuthorById(1L)).thenReturn(author);
-        when(genreDAO.getGenreById(1L)).thenReturn(genre);
 
         Book result = bookAssembler.saveBook(input);
         assertThat(result).isSameAs(saved);
-        verify(bookDAO).saveBookAuthor(10L, 1L);
+        verify(bookDAO).saveBookAuthors(10L, Set.of(1L));
+        verify(bookDAO).saveBookGenres(10L, Set.of(1L));
     }
 
     /**
@@ -347,6 +450,7 @@ class BookAssemblerTest {
                 .isInstanceOf(NotFoundException.class);
 
         verify(bookDAO).deleteBookById(1L);
+        verifyNoInteractions(bookLeaderboard);
     }
 
     /**
@@ -359,6 +463,8 @@ class BookAssemblerTest {
         bookAssembler.deleteBook(1L);
 
         verify(bookDAO).deleteBookById(1L);
+        verify(bookLeaderboard).deleteBook(1L);
+        verify(bookCacheInvalidator).evictBook(1L);
     }
 
     /**
@@ -372,10 +478,10 @@ class BookAssemblerTest {
         b.setAuthors(List.of(new Author(1L, "a")));
         b.setGenres(List.of(new Genre(1L, "g")));
 
-        when(bookDAO.getBooksByAuthorName("a")).thenReturn(List.of(b));
-        when(bookReviewDAO.getReviewByBookId(1L)).thenReturn(List.of());
+        when(bookDAO.getBooksByAuthorName("a", 0L, 11)).thenReturn(List.of(b));
+        when(bookReviewDAO.getRatingsForBooks(Set.of(1L))).thenReturn(List.of());
 
-        List<BookWithAverageRatingDTO> dtos = bookAssembler.getBooksByAuthorName("a");
+        List<BookWithAverageRatingDTO> dtos = bookAssembler.getBooksByAuthorName("a", 0L, 10, BookField.ALL).getBooks();
         assertThat(dtos).hasSize(1);
         assertThat(dtos.getFirst().getId()).isEqualTo(1L);
     }
@@ -391,10 +497,10 @@ class BookAssemblerTest {
         b.setAuthors(List.of(new Author(1L, "a")));
         b.setGenres(List.of(new Genre(1L, "g")));
 
-        when(bookDAO.getBooksByAuthorId(1L)).thenReturn(List.of(b));
-        when(bookReviewDAO.getReviewByBookId(1L)).thenReturn(List.of());
+        when(bookDAO.getBooksByAuthorId(1L, 0L, 11)).thenReturn(List.of(b));
+        when(bookReviewDAO.getRatingsForBooks(Set.of(1L))).thenReturn(List.of());
 
-        List<BookWithAverageRatingDTO> dtos = bookAssembler.getBooksByAuthorId(1L);
+        List<BookWithAverageRatingDTO> dtos = bookAssembler.getBooksByAuthorId(1L, 0L, 10, BookField.ALL).getBooks();
         assertThat(dtos).hasSize(1);
         assertThat(dtos.getFirst().getId()).isEqualTo(1L);
     }
@@ -410,11 +516,73 @@ class BookAssemblerTest {
         b.setAuthors(List.of(new Author(1L, "a")));
         b.setGenres(List.of(new Genre(1L, "g")));
 
-        when(bookDAO.getBooksByGenreId(1L)).thenReturn(List.of(b));
-        when(bookReviewDAO.getReviewByBookId(1L)).thenReturn(List.of());
+        when(bookDAO.getBooksByGenreId(1L, 0L, 11)).thenReturn(List.of(b));
+        when(bookReviewDAO.getRatingsForBooks(Set.of(1L))).thenReturn(List.of());
 
-        List<BookWithAverageRatingDTO> dtos = bookAssembler.getBooksByGenreId(1L);
+        List<BookWithAverageRatingDTO> dtos = bookAssembler.getBooksByGenreId(1L, 0L, 10, BookField.ALL).getBooks();
         assertThat(dtos).hasSize(1);
         assertThat(dtos.getFirst().getId()).isEqualTo(1L);
     }
+
+    /**
+     * Собранная книга берётся из кэша, в том числе при чтении по списку id, пока не изменилась её версия.
+     */
+    @Test
+    void getFullBookWithAverageRatingDTOCachedTest() {
+        Book book = new Book();
+        book.setId(1L);
+        book.setBookName("name");
+        BookWithAverageRatingDTO expected = new BookWithAverageRatingDTO(book);
+        when(bookDAO.getFullBookById(1L)).thenReturn(expected);
+
+        assertThat(bookAssembler.getFullBookWithAverageRatingDTO(1L)).isSameAs(expected);
+        assertThat(bookAssembler.getFullBookWithAverageRatingDTO(1L)).isSameAs(expected);
+        assertThat(bookAssembler.getBooksByIds(List.of(1L), Set.of(BookField.ID))).containsExactly(expected);
+        verify(bookDAO, times(1)).getFullBookById(1L);
+        verify(bookDAO, never()).getBooksByIds(any());
+
+        when(bookCacheInvalidator.getVersion(1L)).thenReturn(1L);
+        bookAssembler.getFullBookWithAverageRatingDTO(1L);
+        verify(bookDAO, times(2)).getFullBookById(1L);
+    }
+
+    /**
+     * Книги по списку id возвращаются в порядке запроса без повторов, ненайденные id пропускаются.
+     */
+    @Test
+    void getBooksByIdsTest() {
+        Book b1 = new Book();
+        b1.setId(1L);
+        b1.setBookName("b1");
+        Book b3 = new Book();
+        b3.setId(3L);
+        b3.setBookName("b3");
+
+        when(bookDAO.getBooksByIds(Set.of(3L, 1L, 5L))).thenReturn(new ArrayList<>(List.of(b1, b3)));
+        when(bookReviewDAO.getRatingsForBooks(Set.of(1L, 3L))).thenReturn(List.of(new BookRatingDTO(3L, 2L, 14L)));
+
+        List<BookWithAverageRatingDTO> dtos = bookAssembler.getBooksByIds(List.of(3L, 1L, 5L, 3L), BookField.ALL);
+        assertThat(dtos)
+                .extracting(BookWithAverageRatingDTO::getId)
+                .containsExactly(3L, 1L);
+        assertThat(dtos.getFirst().getAverageRating()).isEqualTo(7.0f);
+    }
+
+    /**
+     * Пустой список id или список больше допустимого отклоняется без запросов к БД.
+     */
+    @Test
+    void getBooksByIdsBadSizeTest() {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= BatchIds.MAX_BATCH_SIZE + 1; id++) {
+            ids.add(id);
+        }
+
+        assertThatThrownBy(() -> bookAssembler.getBooksByIds(ids, BookField.ALL))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> bookAssembler.getBooksByIds(List.of(), BookField.ALL))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        verifyNoInteractions(bookDAO);
+    }
 }
@@ -0,0 +1,183 @@
+package ru.mrhellko.library.assembler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.mrhellko.library.Entity.Author;
+import ru.mrhellko.library.Entity.Book;
+import ru.mrhellko.library.Entity.BookReview;
+import ru.mrhellko.library.Entity.Genre;
+import ru.mrhellko.library.configuration.CacheConfiguration;
+import ru.mrhellko.library.dao.AbstractDAOTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты без @Transactional: книги удаляются из кэша только после коммита, а данные пересоздаются перед каждым тестом.
+ */
+@SpringBootTest
+public class BookCacheTest extends AbstractDAOTest {
+    @Autowired
+    private BookAssembler bookAssembler;
+    @Autowired
+    private BookReviewAssembler bookReviewAssembler;
+    @Autowired
+    private AuthorService authorService;
+    @Autowired
+    private GenreService genreService;
+    @Autowired
+    private BookJsonCache bookJsonCache;
+    @Autowired
+    private BookCacheInvalidator bookCacheInvalidator;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Новый отзыв удаляет книгу из кэша, и следующий запрос видит новую среднюю оценку.
+     */
+    @Test
+    void saveBookReviewEvictsBookTest() throws Exception {
+        assertThat(getBook(1L).get("averageRating").floatValue()).isEqualTo(5.5f);
+
+        BookReview bookReview = new BookReview();
+        bookReview.setBookId(1L);
+        bookReview.setRating((byte) 10);
+        bookReview.setReviewerName("Ivan");
+        bookReview.setReviewText("text");
+        bookReviewAssembler.saveBookReview(bookReview);
+
+        assertThat(getBook(1L).get("averageRating").floatValue()).isEqualTo(7.0f);
+    }
+
+    /**
+     * Переименование автора удаляет из кэша его книги, остальные книги остаются в кэше.
+     */
+    @Test
+    void updateAuthorEvictsAuthorBooksTest() throws Exception {
+        BookJsonCache.BookJson otherBook = bookJsonCache.getBookJson(2L);
+        assertThat(getBook(1L).get("authors").get(0).get("authorName").asText()).isEqualTo("Joan Rowling");
+
+        authorService.updateAuthor(new Author(null, "Джоан Роулинг"), 1L);
+
+        assertThat(getBook(1L).get("authors").get(0).get("authorName").asText()).isEqualTo("Джоан Роулинг");
+        assertThat(bookJsonCache.getBookJson(2L)).isSameAs(otherBook);
+    }
+
+    /**
+     * Удаление жанра удаляет из кэша книги жанра, связи с жанром удаляются вместе с ним.
+     */
+    @Test
+    void deleteGenreEvictsGenreBooksTest() throws Exception {
+        assertThat(getBook(4L).get("genres").get(0).get("id").asLong()).isEqualTo(6L);
+
+        genreService.deleteGenre(6L);
+
+        assertThat(getBook(4L).get("genres")).isEmpty();
+    }
+
+    /**
+     * Жанр, который параллельный запрос успел положить в кэш до коммита удаления, удаляется из кэша после коммита.
+     */
+    @Test
+    void deleteGenreEvictsGenreAfterCommitTest() {
+        Genre genre = genreService.getGenreById(6L);
+        List<Genre> allGenres = genreService.getAllGenres();
+        Cache genresCache = Objects.requireNonNull(cacheManager.getCache(CacheConfiguration.GENRES_CACHE));
+        Cache allGenresCache = Objects.requireNonNull(cacheManager.getCache(CacheConfiguration.ALL_GENRES_CACHE));
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(_ -> {
+            genreService.deleteGenre(6L);
+            genresCache.put(6L, genre);
+            allGenresCache.put("all", allGenres);
+        });
+
+        assertThat(genresCache.get(6L)).isNull();
+        assertThat(genreService.getGenreById(6L)).isNull();
+        assertThat(genreService.getAllGenres()).extracting(Genre::getId).doesNotContain(6L);
+    }
+
+    /**
+     * Удалённая книга не отдаётся из кэша.
+     */
+    @Test
+    void deleteBookEvictsBookTest() {
+        assertThat(bookJsonCache.getBookJson(3L)).isNotNull();
+
+        bookAssembler.deleteBook(3L);
+
+        assertThat(bookJsonCache.getBookJson(3L)).isNull();
+    }
+
+    /**
+     * Готовый JSON книги отдаётся из кэша, после изменения книги собирается заново с новой версией,
+     * несуществующая книга не кэшируется.
+     */
+    @Test
+    void getBookJsonCachedAndEvictedTest() throws Exception {
+        BookJsonCache.BookJson first = bookJsonCache.getBookJson(1L);
+        assertThat(bookJsonCache.getBookJson(1L)).isSameAs(first);
+        assertThat(objectMapper.readTree(first.json()).get("bookName").asText()).isEqualTo("Гарри Поттер");
+        assertThat(first.gzip()).isNull();
+
+        authorService.updateAuthor(new Author(null, "Джоан Роулинг"), 1L);
+
+        BookJsonCache.BookJson second = bookJsonCache.getBookJson(1L);
+        assertThat(second.version()).isGreaterThan(first.version());
+        assertThat(objectMapper.readTree(second.json()).get("authors").get(0).get("authorName").asText())
+                .isEqualTo("Джоан Роулинг");
+        assertThat(bookJsonCache.getBookJson(99999L)).isNull();
+    }
+
+    /**
+     * Запись с версией, которая устарела к моменту чтения, не используется, даже если осталась в кэше.
+     */
+    @Test
+    void getBookJsonStaleVersionTest() {
+        BookJsonCache.BookJson stale = new BookJsonCache.BookJson(
+                bookCacheInvalidator.getVersion(2L) - 1, "{}".getBytes(StandardCharsets.UTF_8), null);
+        Objects.requireNonNull(cacheManager.getCache(CacheConfiguration.BOOK_JSON_CACHE)).put(2L, stale);
+
+        assertThat(bookJsonCache.getBookJson(2L)).isNotSameAs(stale);
+    }
+
+    /**
+     * Большой ответ хранится и в сжатом виде, распакованный gzip совпадает с JSON.
+     */
+    @Test
+    void getBookJsonGzipTest() throws Exception {
+        Book book = new Book();
+        book.setBookName("Книга ".repeat(BookJsonCache.GZIP_MIN_SIZE / 4));
+        book.getAuthors().add(new Author(1L, null));
+        book.getGenres().add(new Genre(1L, null));
+        Book saved = bookAssembler.saveBook(book);
+
+        BookJsonCache.BookJson bookJson = bookJsonCache.getBookJson(saved.getId());
+        assertThat(bookJson.json().length).isGreaterThanOrEqualTo(BookJsonCache.GZIP_MIN_SIZE);
+        assertThat(bookJson.gzip()).isNotNull();
+        assertThat(bookJson.gzip().length).isLessThan(bookJson.json().length);
+        try (GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(bookJson.gzip()))) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(bookJson.json());
+        }
+    }
+
+    private JsonNode getBook(Long id) throws IOException {
+        return objectMapper.readTree(bookJsonCache.getBookJson(id).json());
+    }
+}
@@ -0,0 +1,143 @@
+package ru.mrhellko.library.assembler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import ru.mrhellko.library.Entity.Book;
+import ru.mrhellko.library.dao.AuthorDAO;
+import ru.mrhellko.library.dao.BookDAO;
+import ru.mrhellko.library.dao.GenreDAO;
+import ru.mrhellko.library.dto.ImportResultDTO;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BookImportServiceTest {
+
+    @Mock
+    private BookDAO bookDAO;
+
+    @Mock
+    private AuthorDAO authorDAO;
+
+    @Mock
+    private GenreDAO genreDAO;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private BookImportService bookImportService;
+
+    /**
+     * Из NDJSON сохраняются книги с существующими авторами и жанрами, остальные попадают в ошибки с номером записи.
+     */
+    @Test
+    void importBooksNdjsonTest() throws Exception {
+        when(authorDAO.getMissingAuthorIds(Set.of(1L, 99L))).thenReturn(Set.of(99L));
+        when(genreDAO.getMissingGenreIds(Set.of(1L))).thenReturn(Set.of());
+
+        ImportResultDTO result = bookImportService.importBooks(toInputStream("""
+                {"bookName": "b1", "authors": [{"id": 1}], "genres": [{"id": 1}]}
+                {"bookName": "b2", "authors": [{"id": 99}], "genres": [{"id": 1}]}
+                {"bookName": "b3", "authors": [], "genres": [{"id": 1}]}
+                """));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Book>> captor = ArgumentCaptor.forClass(List.class);
+        verify(bookDAO).saveBooks(captor.capture());
+        assertThat(captor.getValue()).extracting(Book::getBookName).containsExactly("b1");
+        assertThat(result.getImported()).isEqualTo(1);
+        assertThat(result.getRejected()).isEqualTo(2);
+        assertThat(result.getErrors()).hasSize(2);
+        assertThat(result.getErrors().get(0).getRecord()).isEqualTo(1L);
+        assertThat(result.getErrors().get(0).getMessage()).isEqualTo("Bad authors: [99]");
+        assertThat(result.getErrors().get(1).getRecord()).isEqualTo(2L);
+        assertThat(result.getErrors().get(1).getMessage()).isEqualTo("No authors");
+    }
+
+    /**
+     * JSON-массив импортируется так же, а ошибка записи пачки отклоняет всю пачку без номера записи.
+     */
+    @Test
+    void importBooksArrayChunkFailedTest() throws Exception {
+        when(authorDAO.getMissingAuthorIds(Set.of(1L))).thenReturn(Set.of());
+        when(genreDAO.getMissingGenreIds(Set.of(1L))).thenReturn(Set.of());
+        doThrow(new DataIntegrityViolationException("duplicate")).when(bookDAO).saveBooks(any());
+
+        ImportResultDTO result = bookImportService.importBooks(toInputStream("""
+                [{"bookName": "b1", "authors": [{"id": 1}], "genres": [{"id": 1}]},
+                 {"bookName": "b2", "authors": [{"id": 1}], "genres": [{"id": 1}]}]
+                """));
+
+        assertThat(result.getImported()).isEqualTo(0);
+        assertThat(result.getRejected()).isEqualTo(2);
+        assertThat(result.getErrors()).hasSize(1);
+        assertThat(result.getErrors().getFirst().getChunk()).isEqualTo(0);
+        assertThat(result.getErrors().getFirst().getRecord()).isNull();
+    }
+
+    /**
+     * Запись с полем неверного типа отклоняется с её номером, следующие записи импортируются.
+     */
+    @Test
+    void importBooksBadRecordTest() throws Exception {
+        when(authorDAO.getMissingAuthorIds(Set.of(1L))).thenReturn(Set.of());
+        when(genreDAO.getMissingGenreIds(Set.of(1L))).thenReturn(Set.of());
+
+        ImportResultDTO result = bookImportService.importBooks(toInputStream("""
+                {"bookName": "b1", "authors": [{"id": "abc"}], "genres": [{"id": 1}]}
+                {"bookName": "b2", "authors": [{"id": 1}], "genres": [{"id": 1}]}
+                {"bookName": "b3", "authors": [], "genres": [{"id": 1}]}
+                """));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Book>> captor = ArgumentCaptor.forClass(List.class);
+        verify(bookDAO).saveBooks(captor.capture());
+        assertThat(captor.getValue()).extracting(Book::getBookName).containsExactly("b2");
+        assertThat(result.getImported()).isEqualTo(1);
+        assertThat(result.getRejected()).isEqualTo(2);
+        assertThat(result.getErrors().get(0).getRecord()).isEqualTo(0L);
+        assertThat(result.getErrors().get(0).getMessage()).startsWith("Bad record");
+        assertThat(result.getErrors().get(1).getRecord()).isEqualTo(2L);
+        assertThat(result.getErrors().get(1).getMessage()).isEqualTo("No authors");
+    }
+
+    /**
+     * При ошибке разбора импорт останавливается, книги, прочитанные до ошибки, сохраняются.
+     */
+    @Test
+    void importBooksMalformedTest() throws Exception {
+        when(authorDAO.getMissingAuthorIds(Set.of(1L))).thenReturn(Set.of());
+        when(genreDAO.getMissingGenreIds(Set.of(1L))).thenReturn(Set.of());
+
+        ImportResultDTO result = bookImportService.importBooks(toInputStream("""
+                {"bookName": "b1", "authors": [{"id": 1}], "genres": [{"id": 1}]}
+                {"bookName": "b2", "authors": [
+                """));
+
+        verify(bookDAO).saveBooks(any());
+        assertThat(result.getImported()).isEqualTo(1);
+        assertThat(result.getRejected()).isEqualTo(1);
+        assertThat(result.getErrors().getFirst().getRecord()).isEqualTo(1L);
+        assertThat(result.getErrors().getFirst().getMessage()).startsWith("Malformed input");
+    }
+
+    private static InputStream toInputStream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
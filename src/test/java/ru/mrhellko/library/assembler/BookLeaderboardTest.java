@@ -0,0 +1,227 @@
+package ru.mrhellko.library.assembler;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.mrhellko.library.Entity.Genre;
+import ru.mrhellko.library.dao.BookDAO;
+import ru.mrhellko.library.dao.GenreDAO;
+import ru.mrhellko.library.dto.BookGenreRatingDTO;
+import ru.mrhellko.library.dto.BookRatingDTO;
+import ru.mrhellko.library.dto.TopBookDTO;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BookLeaderboardTest {
+
+    @Mock
+    private BookDAO bookDAO;
+
+    @Mock
+    private GenreDAO genreDAO;
+
+    @InjectMocks
+    private BookLeaderboard bookLeaderboard;
+
+    //Каталог в БД: запросы DAO отвечают по нему так же, как SQL
+    private final Map<Long, BookGenreRatingDTO> catalog = new HashMap<>();
+
+    /**
+     * Каталог: книга 1 с одной десяткой, книга 2 со сотней оценок по 9.5, книга 3 со сотней троек, книга 4 без отзывов.
+     * Средняя оценка каталога 1260 / 201.
+     */
+    @BeforeEach
+    void rebuild() {
+        putBook(1L, "Book 1", List.of(1L), 1L, 10L);
+        putBook(2L, "Book 2", List.of(1L, 2L), 100L, 950L);
+        putBook(3L, "Book 3", List.of(2L), 100L, 300L);
+        putBook(4L, "Book 4", List.of(1L), 0L, 0L);
+        lenient().when(bookDAO.getRatingTotals()).thenAnswer(_ -> {
+            long reviewCount = 0;
+            long ratingSum = 0;
+            for (BookGenreRatingDTO book : catalog.values()) {
+                reviewCount += book.getReviewCount();
+                ratingSum += book.getRatingSum();
+            }
+            return new BookRatingDTO(null, reviewCount, ratingSum);
+        });
+        lenient().when(bookDAO.getTopBookGenreRatings(any(), anyInt(), anyDouble(), anyInt())).thenAnswer(invocation -> {
+            Long genreId = invocation.getArgument(0);
+            int minVotes = invocation.getArgument(1);
+            double meanRating = invocation.getArgument(2);
+            int limit = invocation.getArgument(3);
+            return catalog.values().stream()
+                    .filter(book -> book.getReviewCount() > 0)
+                    .filter(book -> genreId == null || book.getGenreIds().contains(genreId))
+                    .sorted(Comparator.<BookGenreRatingDTO>comparingDouble(book ->
+                                    -(minVotes * meanRating + book.getRatingSum()) / (minVotes + book.getReviewCount()))
+                            .thenComparing(BookGenreRatingDTO::getBookId))
+                    .limit(limit)
+                    .toList();
+        });
+        lenient().when(bookDAO.getBookGenreRatingsByIds(any())).thenAnswer(invocation -> {
+            Set<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(catalog::get).filter(Objects::nonNull).toList();
+        });
+
+        bookLeaderboard.rebuild();
+    }
+
+    /**
+     * Книга с одной высокой оценкой ранжируется ниже книги с сотней хороших, книги без отзывов в рейтинг не попадают.
+     */
+    @Test
+    void getTopAfterRebuildTest() {
+        List<TopBookDTO> top = bookLeaderboard.getTop(null, 10);
+        assertThat(top).extracting(TopBookDTO::getId).containsExactly(2L, 1L, 3L);
+        assertThat(top.getFirst().getBookName()).isEqualTo("Book 2");
+        assertThat(top.getFirst().getReviewCount()).isEqualTo(100L);
+        assertThat(top.getFirst().getAverageRating()).isEqualTo(9.5f);
+        assertThat(top.getFirst().getScore()).isCloseTo((10 * 1260.0 / 201 + 950) / 110, within(1e-9));
+
+        assertThat(bookLeaderboard.getTop(null, 2)).extracting(TopBookDTO::getId).containsExactly(2L, 1L);
+        assertThat(bookLeaderboard.getTop(1L, 10)).extracting(TopBookDTO::getId).containsExactly(2L, 1L);
+        assertThat(bookLeaderboard.getTop(2L, 10)).extracting(TopBookDTO::getId).containsExactly(2L, 3L);
+        assertThat(bookLeaderboard.getTop(99999L, 10)).isEmpty();
+    }
+
+    /**
+     * Перечитанная книга переставляется в общем рейтинге и в уже загруженном рейтинге её жанра без запроса топа из БД.
+     */
+    @Test
+    void refreshBookTest() {
+        assertThat(bookLeaderboard.getTop(1L, 10)).extracting(TopBookDTO::getId).containsExactly(2L, 1L);
+
+        putBook(1L, "Book 1", List.of(1L), 101L, 1010L);
+        bookLeaderboard.refreshBook(1L);
+        putBook(4L, "Book 4", List.of(1L), 1L, 5L);
+        bookLeaderboard.refreshBook(4L);
+
+        assertThat(bookLeaderboard.getTop(null, 10)).extracting(TopBookDTO::getId).containsExactly(1L, 2L, 4L, 3L);
+        assertThat(bookLeaderboard.getTop(1L, 10)).extracting(TopBookDTO::getId).containsExactly(1L, 2L, 4L);
+
+        putBook(4L, "Book 4", List.of(1L), 0L, 0L);
+        bookLeaderboard.refreshBook(4L);
+        assertThat(bookLeaderboard.getTop(1L, 10)).extracting(TopBookDTO::getId).containsExactly(1L, 2L);
+
+        verify(bookDAO, times(1)).getTopBookGenreRatings(isNull(), anyInt(), anyDouble(), anyInt());
+        verify(bookDAO, times(1)).getTopBookGenreRatings(eq(1L), anyInt(), anyDouble(), anyInt());
+    }
+
+    /**
+     * Изменение жанров книги переносит её между рейтингами жанров, удалённая книга пропадает из всех рейтингов.
+     */
+    @Test
+    void refreshAndDeleteBookTest() {
+        assertThat(bookLeaderboard.getTop(1L, 10)).extracting(TopBookDTO::getId).containsExactly(2L, 1L);
+        assertThat(bookLeaderboard.getTop(2L, 10)).extracting(TopBookDTO::getId).containsExactly(2L, 3L);
+
+        putBook(1L, "New name", List.of(2L), 1L, 10L);
+        bookLeaderboard.refreshBook(1L);
+
+        assertThat(bookLeaderboard.getTop(1L, 10)).extracting(TopBookDTO::getId).containsExactly(2L);
+        assertThat(bookLeaderboard.getTop(2L, 10)).extracting(TopBookDTO::getId).containsExactly(2L, 1L, 3L);
+        assertThat(bookLeaderboard.getTop(2L, 10).get(1).getBookName()).isEqualTo("New name");
+
+        catalog.remove(2L);
+        bookLeaderboard.deleteBook(2L);
+        assertThat(bookLeaderboard.getTop(null, 10)).extracting(TopBookDTO::getId).containsExactly(1L, 3L);
+        assertThat(bookLeaderboard.getTop(1L, 10)).isEmpty();
+    }
+
+    /**
+     * Пустой рейтинг существующего жанра хранится как полный и не перечитывается, пока в жанре нет книг.
+     * Рейтинг несуществующего жанра не хранится.
+     */
+    @Test
+    void emptyGenreTest() {
+        when(genreDAO.getGenreById(3L)).thenReturn(new Genre(3L, "Genre 3"));
+        when(genreDAO.getGenreById(99999L)).thenReturn(null);
+
+        assertThat(bookLeaderboard.getTop(3L, 10)).isEmpty();
+        assertThat(bookLeaderboard.getTop(3L, 10)).isEmpty();
+        assertThat(bookLeaderboard.getTop(99999L, 10)).isEmpty();
+        assertThat(bookLeaderboard.getTop(99999L, 10)).isEmpty();
+
+        putBook(1L, "Book 1", List.of(1L, 3L), 1L, 10L);
+        bookLeaderboard.refreshBook(1L);
+        assertThat(bookLeaderboard.getTop(3L, 10)).extracting(TopBookDTO::getId).containsExactly(1L);
+
+        verify(bookDAO, times(1)).getTopBookGenreRatings(eq(3L), anyInt(), anyDouble(), anyInt());
+        verify(bookDAO, times(2)).getTopBookGenreRatings(eq(99999L), anyInt(), anyDouble(), anyInt());
+    }
+
+    /**
+     * Рейтинг удалённого жанра забывается и больше не отдаёт его книги.
+     */
+    @Test
+    void deleteGenreTest() {
+        assertThat(bookLeaderboard.getTop(2L, 10)).extracting(TopBookDTO::getId).containsExactly(2L, 3L);
+
+        catalog.get(2L).setGenreIds(List.of(1L));
+        catalog.get(3L).setGenreIds(List.of());
+        bookLeaderboard.deleteGenre(2L);
+
+        assertThat(bookLeaderboard.getTop(2L, 10)).isEmpty();
+        assertThat(bookLeaderboard.getTop(null, 10)).extracting(TopBookDTO::getId).containsExactly(2L, 1L, 3L);
+    }
+
+    /**
+     * В памяти хранится не больше CAPACITY книг, рейтинг перечитывается из БД,
+     * только когда в нём осталось меньше MAX_TOP_SIZE книг.
+     */
+    @Test
+    void boundedRankingRefilledTest() {
+        catalog.clear();
+        int size = BookLeaderboard.CAPACITY + 10;
+        for (long id = 1; id <= size; id++) {
+            putBook(id, "Book " + id, List.of(1L), 1L, id);
+        }
+        bookLeaderboard.rebuild();
+        assertThat(bookLeaderboard.getTop(null, 1)).extracting(TopBookDTO::getId).containsExactly((long) size);
+
+        for (long id = size; id > size - BookLeaderboard.MAX_TOP_SIZE; id--) {
+            catalog.remove(id);
+            bookLeaderboard.deleteBook(id);
+        }
+        long first = size - BookLeaderboard.MAX_TOP_SIZE;
+        assertThat(bookLeaderboard.getTop(null, 1)).extracting(TopBookDTO::getId).containsExactly(first);
+        verify(bookDAO, times(2)).getTopBookGenreRatings(isNull(), anyInt(), anyDouble(), anyInt());
+
+        catalog.remove(first);
+        bookLeaderboard.deleteBook(first);
+        List<TopBookDTO> top = bookLeaderboard.getTop(null, BookLeaderboard.MAX_TOP_SIZE);
+        assertThat(top).hasSize(BookLeaderboard.MAX_TOP_SIZE);
+        assertThat(top.getFirst().getId()).isEqualTo(first - 1);
+        verify(bookDAO, times(3)).getTopBookGenreRatings(isNull(), anyInt(), anyDouble(), anyInt());
+    }
+
+    /**
+     * Если k вне диапазона, то выбрасывается IllegalArgumentException.
+     */
+    @Test
+    void getTopBadKTest() {
+        assertThatThrownBy(() -> bookLeaderboard.getTop(null, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> bookLeaderboard.getTop(null, BookLeaderboard.MAX_TOP_SIZE + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void putBook(Long id, String bookName, List<Long> genreIds, Long reviewCount, Long ratingSum) {
+        catalog.put(id, new BookGenreRatingDTO(id, bookName, new ArrayList<>(genreIds), reviewCount, ratingSum));
+    }
+}
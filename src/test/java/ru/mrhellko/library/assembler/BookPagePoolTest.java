@@ -0,0 +1,50 @@
+package ru.mrhellko.library.assembler;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.mrhellko.library.dao.AbstractDAOTest;
+import ru.mrhellko.library.dto.BookField;
+import ru.mrhellko.library.dto.BookPageDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Пул из двух соединений: страница книг не должна держать соединение, пока ждёт параллельные запросы догрузки.
+ */
+@SpringBootTest(properties = "spring.datasource.hikari.maximum-pool-size=2")
+public class BookPagePoolTest extends AbstractDAOTest {
+    private static final int CONCURRENT_PAGES = 8;
+
+    @Autowired
+    private BookAssembler bookAssembler;
+
+    /**
+     * Одновременных страниц больше, чем соединений в пуле, и все они собираются до истечения hydration-timeout.
+     */
+    @Test
+    void concurrentPagesExceedPoolSizeTest() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<BookPageDTO>> pages = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CONCURRENT_PAGES; i++) {
+                pages.add(executor.submit(() -> {
+                    start.await();
+                    return bookAssembler.getFullAllBooks(0, 10, BookField.ALL);
+                }));
+            }
+            start.countDown();
+            for (Future<BookPageDTO> page : pages) {
+                assertThat(page.get(10, TimeUnit.SECONDS).getBooks()).isNotEmpty();
+            }
+        }
+    }
+}
@@ -9,8 +9,11 @@ import ru.mrhellko.library.Entity.BookReview;
 import ru.mrhellko.library.dao.BookReviewDAO;
 import ru.mrhellko.library.dto.BookReviewByBookIdDTO;
 import ru.mrhellko.library.dto.BookReviewByReviewerNameDTO;
+import ru.mrhellko.library.dto.BookReviewPageDTO;
 import ru.mrhellko.library.exception.NotFoundException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -24,37 +27,79 @@ class BookReviewAssemblerTest {
     @Mock
     private BookReviewDAO bookReviewDAO;
 
+    @Mock
+    private BookLeaderboard bookLeaderboard;
+
+    @Mock
+    private BookCacheInvalidator bookCacheInvalidator;
+
     @InjectMocks
     private BookReviewAssembler bookReviewAssembler;
 
     /**
-     * Если по bookId нет отзывов, то возвращается пустой список.
+     * Если по bookId нет отзывов, то возвращается пустая страница без курсора.
      */
     @Test
     void getReviewByBookIdNotFoundTest() {
-        when(bookReviewDAO.getReviewByBookId(1L)).thenReturn(List.of());
+        when(bookReviewDAO.getReviewByBookId(1L, Long.MAX_VALUE, 11)).thenReturn(List.of());
 
-        List<BookReviewByBookIdDTO> dtos = bookReviewAssembler.getReviewByBookId(1L);
-        assertThat(dtos).isEmpty();
+        BookReviewPageDTO page = bookReviewAssembler.getReviewByBookId(1L, Long.MAX_VALUE, 10);
+        assertThat(page.getReviews()).isEmpty();
+        assertThat(page.getNextCursor()).isNull();
     }
 
     /**
-     * Если по bookId есть отзывы, то возвращается список DTO с корректно заполненными полями.
+     * Если по bookId есть отзывы, то возвращается страница DTO с корректно заполненными полями.
      */
     @Test
     void getReviewByBookIdFoundTest() {
         BookReview r = new BookReview();
+        r.setId(5L);
         r.setReviewerName("Anna");
         r.setReviewText("text");
         r.setRating((byte) 8);
 
-        when(bookReviewDAO.getReviewByBookId(1L)).thenReturn(List.of(r));
+        when(bookReviewDAO.getReviewByBookId(1L, Long.MAX_VALUE, 11)).thenReturn(List.of(r));
 
-        List<BookReviewByBookIdDTO> dtos = bookReviewAssembler.getReviewByBookId(1L);
+        BookReviewPageDTO page = bookReviewAssembler.getReviewByBookId(1L, Long.MAX_VALUE, 10);
+        List<BookReviewByBookIdDTO> dtos = page.getReviews();
         assertThat(dtos).hasSize(1);
         assertThat(dtos.getFirst().getReviewerName()).isEqualTo("Anna");
         assertThat(dtos.getFirst().getReviewText()).isEqualTo("text");
         assertThat(dtos.getFirst().getRating()).isEqualTo((byte) 8);
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    /**
+     * Если DAO вернул на одну запись больше limit, то лишняя запись отбрасывается, а курсор равен id последнего отзыва страницы.
+     */
+    @Test
+    void getReviewByBookIdNextCursorTest() {
+        BookReview r1 = new BookReview();
+        r1.setId(9L);
+        BookReview r2 = new BookReview();
+        r2.setId(7L);
+        BookReview r3 = new BookReview();
+        r3.setId(4L);
+
+        when(bookReviewDAO.getReviewByBookId(1L, 10L, 3)).thenReturn(new ArrayList<>(List.of(r1, r2, r3)));
+
+        BookReviewPageDTO page = bookReviewAssembler.getReviewByBookId(1L, 10L, 2);
+        assertThat(page.getReviews()).hasSize(2);
+        assertThat(page.getNextCursor()).isEqualTo(7L);
+    }
+
+    /**
+     * Если limit вне диапазона, то выбрасывается IllegalArgumentException и DAO не вызывается.
+     */
+    @Test
+    void getReviewByBookIdBadLimitTest() {
+        assertThatThrownBy(() -> bookReviewAssembler.getReviewByBookId(1L, Long.MAX_VALUE, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> bookReviewAssembler.getReviewByBookId(1L, Long.MAX_VALUE, BookReviewAssembler.MAX_PAGE_SIZE + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        verifyNoInteractions(bookReviewDAO);
     }
 
     /**
@@ -75,7 +120,7 @@ class BookReviewAssemblerTest {
      */
     @Test
     void updateBookReviewNotFoundTest() {
-        when(bookReviewDAO.getReviewById(1L)).thenReturn(null);
+        when(bookReviewDAO.getReviewForUpdate(1L)).thenReturn(null);
 
         BookReview input = new BookReview();
         input.setBookId(1L);
@@ -83,7 +128,7 @@ class BookReviewAssemblerTest {
         BookReview updated = bookReviewAssembler.updateBookReview(input, 1L);
         assertThat(updated).isNull();
 
-        verify(bookReviewDAO).getReviewById(1L);
+        verify(bookReviewDAO).getReviewForUpdate(1L);
         verify(bookReviewDAO, never()).updateBookReview(any());
     }
 
@@ -94,8 +139,9 @@ class BookReviewAssemblerTest {
     void updateBookReviewFoundTest() {
         BookReview existing = new BookReview();
         existing.setId(1L);
+        existing.setBookId(1L);
 
-        when(bookReviewDAO.getReviewById(1L)).thenReturn(existing);
+        when(bookReviewDAO.getReviewForUpdate(1L)).thenReturn(existing);
 
         BookReview input = new BookReview();
         input.setBookId(2L);
@@ -112,6 +158,8 @@ class BookReviewAssemblerTest {
         assertThat(updated.getReviewText()).isEqualTo("text");
 
         verify(bookReviewDAO).updateBookReview(existing);
+        verify(bookLeaderboard).refreshBooks(Arrays.asList(1L, 2L));
+        verify(bookCacheInvalidator).evictBooks(Arrays.asList(1L, 2L));
     }
 
     /**
@@ -122,11 +170,15 @@ class BookReviewAssemblerTest {
         BookReview input = new BookReview();
         BookReview saved = new BookReview();
         saved.setId(10L);
+        saved.setBookId(1L);
+        saved.setRating((byte) 7);
 
         when(bookReviewDAO.saveBookReview(input)).thenReturn(saved);
 
         BookReview result = bookReviewAssembler.saveBookReview(input);
         assertThat(result).isSameAs(saved);
+        verify(bookLeaderboard).refreshBook(1L);
+        verify(bookCacheInvalidator).evictBook(1L);
     }
 
     /**
@@ -143,14 +195,21 @@ class BookReviewAssemblerTest {
     }
 
     /**
-     * Если удаление отзыва прошло успешно, то исключение не выбрасывается.
+     * Если удаление отзыва прошло успешно, то исключение не выбрасывается, а оценка убирается из рейтинга книг.
      */
     @Test
     void deleteBookReviewByIdOkTest() {
+        BookReview existing = new BookReview();
+        existing.setId(1L);
+        existing.setBookId(2L);
+        existing.setRating((byte) 9);
+        when(bookReviewDAO.getReviewForUpdate(1L)).thenReturn(existing);
         when(bookReviewDAO.deleteBookReviewById(1L)).thenReturn(1);
 
         bookReviewAssembler.deleteBookReviewById(1L);
 
         verify(bookReviewDAO).deleteBookReviewById(1L);
+        verify(bookLeaderboard).refreshBook(2L);
+        verify(bookCacheInvalidator).evictBook(2L);
     }
 }
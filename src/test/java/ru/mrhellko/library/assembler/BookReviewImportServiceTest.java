@@ -0,0 +1,143 @@
+package ru.mrhellko.library.assembler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.mrhellko.library.Entity.BookReview;
+import ru.mrhellko.library.dao.BookDAO;
+import ru.mrhellko.library.dao.BookReviewDAO;
+import ru.mrhellko.library.dto.ImportResultDTO;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BookReviewImportServiceTest {
+
+    @Mock
+    private BookDAO bookDAO;
+
+    @Mock
+    private BookReviewDAO bookReviewDAO;
+
+    @Mock
+    private BookLeaderboard bookLeaderboard;
+
+    @Mock
+    private BookCacheInvalidator bookCacheInvalidator;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private BookReviewImportService bookReviewImportService;
+
+    /**
+     * Из CSV сохраняются отзывы к существующим книгам с корректной оценкой, остальные попадают в ошибки.
+     */
+    @Test
+    void importReviewsCsvTest() throws Exception {
+        when(bookDAO.getMissingBookIds(Set.of(1L, 99L))).thenReturn(Set.of(99L));
+
+        ImportResultDTO result = bookReviewImportService.importReviewsCsv(toInputStream("""
+                bookId,rating,reviewerName,reviewText
+                1,8,Anna,"Хорошая книга, рекомендую"
+                99,7,Sergei,Нет такой книги
+                1,11,Fiona,Слишком высокая оценка
+                """));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<BookReview>> captor = ArgumentCaptor.forClass(List.class);
+        verify(bookReviewDAO).saveBookReviews(captor.capture());
+        assertThat(captor.getValue()).hasSize(1);
+        assertThat(captor.getValue().getFirst().getReviewText()).isEqualTo("Хорошая книга, рекомендую");
+        assertThat(result.getImported()).isEqualTo(1);
+        assertThat(result.getRejected()).isEqualTo(2);
+        assertThat(result.getErrors().get(0).getRecord()).isEqualTo(1L);
+        assertThat(result.getErrors().get(0).getMessage()).isEqualTo("Bad book: 99");
+        assertThat(result.getErrors().get(1).getRecord()).isEqualTo(2L);
+    }
+
+    /**
+     * Отзывы из NDJSON пишутся пачками, каждая пачка проверяется и сохраняется отдельно.
+     */
+    @Test
+    void importReviewsNdjsonChunksTest() throws Exception {
+        when(bookDAO.getMissingBookIds(Set.of(1L))).thenReturn(Set.of());
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < BookReviewImportService.IMPORT_CHUNK_SIZE + 1; i++) {
+            ndjson.append("{\"bookId\": 1, \"rating\": 5, \"reviewerName\": \"Anna\"}\n");
+        }
+
+        ImportResultDTO result = bookReviewImportService.importReviews(toInputStream(ndjson.toString()));
+
+        verify(bookDAO, times(2)).getMissingBookIds(Set.of(1L));
+        verify(bookReviewDAO, times(2)).saveBookReviews(any());
+        assertThat(result.getImported()).isEqualTo(BookReviewImportService.IMPORT_CHUNK_SIZE + 1);
+        assertThat(result.getRejected()).isEqualTo(0);
+        assertThat(result.getErrors()).isEmpty();
+    }
+
+    /**
+     * Строка CSV с нечисловой оценкой отклоняется с её номером, следующие строки импортируются.
+     */
+    @Test
+    void importReviewsCsvBadRecordTest() throws Exception {
+        when(bookDAO.getMissingBookIds(Set.of(1L))).thenReturn(Set.of());
+
+        ImportResultDTO result = bookReviewImportService.importReviewsCsv(toInputStream("""
+                bookId,rating,reviewerName,reviewText
+                1,abc,Anna,Оценка не число
+                1,8,Boris,Хорошая книга
+                1,0,Fiona,Слишком низкая оценка
+                """));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<BookReview>> captor = ArgumentCaptor.forClass(List.class);
+        verify(bookReviewDAO).saveBookReviews(captor.capture());
+        assertThat(captor.getValue()).extracting(BookReview::getReviewerName).containsExactly("Boris");
+        assertThat(result.getImported()).isEqualTo(1);
+        assertThat(result.getRejected()).isEqualTo(2);
+        assertThat(result.getErrors().get(0).getRecord()).isEqualTo(0L);
+        assertThat(result.getErrors().get(0).getMessage()).startsWith("Bad record");
+        assertThat(result.getErrors().get(1).getRecord()).isEqualTo(2L);
+    }
+
+    /**
+     * Запись NDJSON с полем неверного типа отклоняется, а повреждённый поток останавливает импорт.
+     */
+    @Test
+    void importReviewsNdjsonBadRecordAndMalformedTest() throws Exception {
+        when(bookDAO.getMissingBookIds(Set.of(1L))).thenReturn(Set.of());
+
+        ImportResultDTO result = bookReviewImportService.importReviews(toInputStream("""
+                {"bookId": 1, "rating": "abc", "reviewerName": "Anna"}
+                {"bookId": 1, "rating": 5, "reviewerName": "Boris"}
+                {"bookId": 1, "rating": 5,
+                """));
+
+        verify(bookReviewDAO).saveBookReviews(any());
+        assertThat(result.getImported()).isEqualTo(1);
+        assertThat(result.getRejected()).isEqualTo(2);
+        assertThat(result.getErrors().get(0).getRecord()).isEqualTo(0L);
+        assertThat(result.getErrors().get(0).getMessage()).startsWith("Bad record");
+        assertThat(result.getErrors().get(1).getRecord()).isEqualTo(2L);
+        assertThat(result.getErrors().get(1).getMessage()).startsWith("Malformed input");
+    }
+
+    private static InputStream toInputStream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
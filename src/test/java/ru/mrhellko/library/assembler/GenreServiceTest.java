@@ -22,6 +22,12 @@ public class GenreServiceTest {
     @Mock
     private GenreDAO genreDAO;
 
+    @Mock
+    private BookCacheInvalidator bookCacheInvalidator;
+
+    @Mock
+    private BookLeaderboard bookLeaderboard;
+
     @InjectMocks
     private GenreService genreService;
 
@@ -47,6 +53,19 @@ public class GenreServiceTest {
                 .containsExactly(1L, 2L);
     }
 
+    /**
+     * Жанры по списку id выбираются из списка всех жанров в порядке запроса.
+     */
+    @Test
+    void getGenresByIdsTest() {
+        when(genreDAO.getAllGenres()).thenReturn(List.of(new Genre(1L, "g1"), new Genre(2L, "g2"), new Genre(3L, "g3")));
+
+        List<Genre> genres = genreService.getGenresByIds(List.of(3L, 1L, 7L));
+        assertThat(genres)
+                .extracting(Genre::getId)
+                .containsExactly(3L, 1L);
+    }
+
     /**
      * Если по id нет жанра, то возвращается null.
      */
@@ -72,6 +91,7 @@ public class GenreServiceTest {
         Genre foundGenre = genreService.getGenreById(1L);
         assertThat(foundGenre.getId()).isEqualTo(1);
         assertThat(foundGenre.getGenreName()).isEqualTo("name");
+        assertThat(foundGenre).isNotSameAs(genre);
     }
 
     /**
@@ -92,7 +112,7 @@ public class GenreServiceTest {
     }
 
     /**
-     * Если жанр найден, то поля обновляются и update вызывается.
+     * Если жанр найден, то поля обновляются и update вызывается, а объект из DAO (возможно, из кэша) не меняется.
      */
     @Test
     void updateGenreFoundTest() {
@@ -109,7 +129,11 @@ public class GenreServiceTest {
         assertThat(updated.getId()).isEqualTo(1L);
         assertThat(updated.getGenreName()).isEqualTo("name");
 
-        verify(genreDAO).updateGenre(existing);
+        assertThat(existing.getGenreName()).isNull();
+
+        verify(genreDAO).updateGenre(new Genre(1L, "name"));
+        verify(bookCacheInvalidator).evictGenre(1L);
+        verify(bookCacheInvalidator).evictBooksOfGenre(1L);
     }
 
     /**
@@ -125,6 +149,7 @@ public class GenreServiceTest {
 
         Genre result = genreService.saveGenre(input);
         assertThat(result).isSameAs(saved);
+        verify(bookCacheInvalidator).evictGenre(10L);
     }
 
     /**
@@ -150,5 +175,8 @@ public class GenreServiceTest {
         genreService.deleteGenre(1L);
 
         verify(genreDAO).deleteGenreById(1L);
+        verify(bookCacheInvalidator).evictBooksOfGenre(1L);
+        verify(bookCacheInvalidator).evictGenre(1L);
+        verify(bookLeaderboard).deleteGenre(1L);
     }
 }
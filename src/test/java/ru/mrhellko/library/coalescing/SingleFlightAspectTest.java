@@ -0,0 +1,126 @@
+package ru.mrhellko.library.coalescing;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SingleFlightAspectTest {
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    /**
+     * Вызов, пришедший во время выполнения такого же вызова, не выполняет метод и получает тот же результат.
+     */
+    @Test
+    void concurrentCallsSharedTest() throws Exception {
+        Catalog catalog = new Catalog();
+        Catalog proxy = proxy(catalog);
+
+        Future<String> leader = start(() -> proxy.getBook(1L));
+        awaitCount(catalog.calls::get, 1);
+        Future<String> follower = start(() -> proxy.getBook(1L));
+        awaitCount(() -> count("shared"), 1);
+        catalog.release.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("book 1");
+        assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo("book 1");
+        assertThat(catalog.calls.get()).isEqualTo(1);
+        assertThat(count("leader")).isEqualTo(1);
+    }
+
+    /**
+     * Вызовы с разными аргументами и вызовы после завершения предыдущего выполняются отдельно.
+     */
+    @Test
+    void differentArgumentsAndSequentialCallsNotSharedTest() {
+        Catalog catalog = new Catalog();
+        catalog.release.countDown();
+        Catalog proxy = proxy(catalog);
+
+        assertThat(proxy.getBook(1L)).isEqualTo("book 1");
+        assertThat(proxy.getBook(2L)).isEqualTo("book 2");
+        assertThat(proxy.getBook(1L)).isEqualTo("book 1");
+
+        assertThat(catalog.calls.get()).isEqualTo(3);
+        assertThat(count("shared")).isZero();
+    }
+
+    /**
+     * Исключение выполнившего вызова получают и ожидавшие вызовы.
+     */
+    @Test
+    void exceptionSharedTest() throws Exception {
+        Catalog catalog = new Catalog();
+        Catalog proxy = proxy(catalog);
+
+        Future<String> leader = start(() -> proxy.getBook(-1L));
+        awaitCount(catalog.calls::get, 1);
+        Future<String> follower = start(() -> proxy.getBook(-1L));
+        awaitCount(() -> count("shared"), 1);
+        catalog.release.countDown();
+
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThat(catalog.calls.get()).isEqualTo(1);
+    }
+
+    private Catalog proxy(Catalog catalog) {
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(catalog);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(new SingleFlightAspect(meterRegistry));
+        return proxyFactory.getProxy();
+    }
+
+    private long count(String result) {
+        Counter counter = meterRegistry.find(SingleFlightAspect.CALLS_COUNTER)
+                .tag("name", "book")
+                .tag("result", result)
+                .counter();
+        return counter != null ? (long) counter.count() : 0;
+    }
+
+    private static <T> Future<T> start(Callable<T> task) {
+        FutureTask<T> futureTask = new FutureTask<>(task);
+        Thread.ofVirtual().start(futureTask);
+        return futureTask;
+    }
+
+    private static void awaitCount(LongSupplier count, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (count.getAsLong() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(count.getAsLong()).isEqualTo(expected);
+    }
+
+    public static class Catalog {
+        private final AtomicInteger calls = new AtomicInteger();
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @SingleFlight("book")
+        public String getBook(Long id) {
+            calls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            if (id < 0) {
+                throw new IllegalArgumentException("Id must be positive");
+            }
+            return "book " + id;
+        }
+    }
+}
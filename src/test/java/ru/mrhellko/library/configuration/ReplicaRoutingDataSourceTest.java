@@ -0,0 +1,113 @@
+package ru.mrhellko.library.configuration;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Основная БД и реплики - отдельные in-memory базы H2, каждая отвечает своим именем на запрос к таблице node.
+ */
+public class ReplicaRoutingDataSourceTest {
+    private static final String GET_NODE_NAME_SQL = "select name from node";
+
+    /**
+     * Чтение вне транзакции и в пишущей транзакции идёт в основную БД, read-only транзакции читают из реплик по кругу.
+     */
+    @Test
+    void readOnlyTransactionsRoundRobinTest() {
+        Routing routing = new Routing(List.of(node("replica1"), node("replica2")));
+
+        assertThat(routing.jdbcTemplate.queryForObject(GET_NODE_NAME_SQL, String.class)).isEqualTo("primary");
+        assertThat(routing.readWrite.execute(_ -> routing.jdbcTemplate.queryForObject(GET_NODE_NAME_SQL, String.class)))
+                .isEqualTo("primary");
+
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            names.add(routing.readOnly.execute(_ -> routing.jdbcTemplate.queryForObject(GET_NODE_NAME_SQL, String.class)));
+        }
+        assertThat(names).containsExactly("replica1", "replica2", "replica1", "replica2");
+    }
+
+    /**
+     * Задача, обёрнутая inheritReadOnly, читает из реплики и в другом потоке.
+     */
+    @Test
+    void inheritReadOnlyTest() throws Exception {
+        Routing routing = new Routing(List.of(node("replica1")));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            String name = routing.readOnly.execute(_ -> {
+                try {
+                    return executor.submit(ReplicaRoutingDataSource.inheritReadOnly(
+                            () -> routing.jdbcTemplate.queryForObject(GET_NODE_NAME_SQL, String.class))).get();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertThat(name).isEqualTo("replica1");
+            assertThat(executor.submit(ReplicaRoutingDataSource.inheritReadOnly(
+                    () -> routing.jdbcTemplate.queryForObject(GET_NODE_NAME_SQL, String.class))).get())
+                    .isEqualTo("primary");
+        }
+    }
+
+    /**
+     * Недоступная реплика пропускается после неудачного соединения и после проверки,
+     * если доступных реплик нет, чтение идёт в основную БД.
+     */
+    @Test
+    void unhealthyReplicaSkippedTest() {
+        DataSource broken = new DriverManagerDataSource("jdbc:h2:tcp://localhost:1/mem:broken", "sa", "");
+        Routing routing = new Routing(List.of(broken, node("replica2")));
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(routing.readOnly.execute(_ -> routing.jdbcTemplate.queryForObject(GET_NODE_NAME_SQL, String.class)))
+                    .isEqualTo("replica2");
+        }
+
+        Routing allBroken = new Routing(List.of(broken));
+        allBroken.replicaRoutingDataSource.checkReplicas();
+        assertThat(allBroken.readOnly.execute(_ -> allBroken.jdbcTemplate.queryForObject(GET_NODE_NAME_SQL, String.class)))
+                .isEqualTo("primary");
+    }
+
+    private static DataSource node(String name) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table if not exists node (name varchar(16))");
+        jdbcTemplate.update("delete from node");
+        jdbcTemplate.update("insert into node (name) values (?)", name);
+        return dataSource;
+    }
+
+    private static class Routing {
+        private final ReplicaRoutingDataSource replicaRoutingDataSource;
+        private final JdbcTemplate jdbcTemplate;
+        private final TransactionTemplate readOnly;
+        private final TransactionTemplate readWrite;
+
+        private Routing(List<DataSource> replicas) {
+            replicaRoutingDataSource = new ReplicaRoutingDataSource(node("primary"), replicas,
+                    Duration.ofHours(1), Duration.ofSeconds(1));
+            DataSource dataSource = new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+            jdbcTemplate = new JdbcTemplate(dataSource);
+            DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+            readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            readWrite = new TransactionTemplate(transactionManager);
+        }
+    }
+}
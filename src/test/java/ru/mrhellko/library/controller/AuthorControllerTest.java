@@ -12,6 +12,8 @@ import ru.mrhellko.library.Entity.Author;
 import ru.mrhellko.library.assembler.AuthorService;
 import ru.mrhellko.library.exception.NotFoundException;
 
+import java.util.List;
+
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -61,6 +63,22 @@ public class AuthorControllerTest {
                 .andExpect(jsonPath("$.authorName").value("name"));
     }
 
+    /**
+     * Эндпоинт /authors?ids= возвращает авторов списком, слишком длинный список отклоняется с 400 Bad Request.
+     */
+    @Test
+    void getAuthorsByIdsTest() throws Exception {
+        when(authorService.getAuthorsByIds(List.of(3L, 1L))).thenReturn(List.of(new Author(3L, "a3"), new Author(1L, "a1")));
+        when(authorService.getAuthorsByIds(List.of(4L))).thenThrow(new IllegalArgumentException("Ids count"));
+
+        mockMvc.perform(get("/authors").param("ids", "3,1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].authorName").value("a3"))
+                .andExpect(jsonPath("$[1].authorName").value("a1"));
+        mockMvc.perform(get("/authors").param("ids", "4"))
+                .andExpect(status().isBadRequest());
+    }
+
     /**
      * Если автор для обновления не найден, то эндпоинт PUT /authors/{id} возвращает 404 Not Found.
      */
@@ -4,31 +4,57 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import ru.mrhellko.library.Entity.Author;
 import ru.mrhellko.library.Entity.Book;
 import ru.mrhellko.library.Entity.Genre;
 import ru.mrhellko.library.assembler.BookAssembler;
+import ru.mrhellko.library.assembler.BookImportService;
+import ru.mrhellko.library.assembler.BookJsonCache;
+import ru.mrhellko.library.assembler.BookLeaderboard;
+import ru.mrhellko.library.configuration.AsyncTimeoutConfiguration;
+import ru.mrhellko.library.configuration.JacksonConfiguration;
+import ru.mrhellko.library.dto.BookField;
+import ru.mrhellko.library.dto.BookPageDTO;
 import ru.mrhellko.library.dto.BookWithAverageRatingDTO;
+import ru.mrhellko.library.dto.ImportErrorDTO;
+import ru.mrhellko.library.dto.ImportResultDTO;
+import ru.mrhellko.library.dto.TopBookDTO;
 import ru.mrhellko.library.exception.NotFoundException;
+import ru.mrhellko.library.limiter.ConcurrencyLimitFilter;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(BookController.class)
+@Import({JacksonConfiguration.class, AsyncTimeoutConfiguration.class})
 class BookControllerTest {
 
     @Autowired
@@ -40,12 +66,64 @@ class BookControllerTest {
     @MockitoBean
     private BookAssembler bookAssembler;
 
+    @MockitoBean
+    private BookImportService bookImportService;
+
+    @MockitoBean
+    private BookLeaderboard bookLeaderboard;
+
+    @MockitoBean
+    private BookJsonCache bookJsonCache;
+
+    /**
+     * Эндпоинт /books?ids= возвращает книги одним списком, поиск по автору при этом не вызывается.
+     */
+    @Test
+    void getBooksByIdsTest() throws Exception {
+        Book b1 = new Book();
+        b1.setId(1L);
+        Book b2 = new Book();
+        b2.setId(2L);
+        when(bookAssembler.getBooksByIds(List.of(2L, 1L), BookField.ALL))
+                .thenReturn(List.of(new BookWithAverageRatingDTO(b2), new BookWithAverageRatingDTO(b1)));
+
+        mockMvc.perform(get("/books").param("ids", "2,1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(2))
+                .andExpect(jsonPath("$[1].id").value(1));
+    }
+
+    /**
+     * Эндпоинт /books/top возвращает лучшие книги жанра из рейтинга, по умолчанию 10 книг.
+     */
+    @Test
+    void getTopTest() throws Exception {
+        when(bookLeaderboard.getTop(2L, 10)).thenReturn(List.of(new TopBookDTO(4L, "Благие знамения", 1L, 10.0f, 6.3)));
+
+        mockMvc.perform(get("/books/top").param("genreId", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(4))
+                .andExpect(jsonPath("$[0].bookName").value("Благие знамения"))
+                .andExpect(jsonPath("$[0].score").value(6.3));
+    }
+
+    /**
+     * Если k вне диапазона, то эндпоинт /books/top возвращает 400 Bad Request.
+     */
+    @Test
+    void getTopBadKTest() throws Exception {
+        when(bookLeaderboard.getTop(null, 1000)).thenThrow(new IllegalArgumentException("K must be between 1 and 100"));
+
+        mockMvc.perform(get("/books/top").param("k", "1000"))
+                .andExpect(status().isBadRequest());
+    }
+
     /**
      * Если список книг пуст, то эндпоинт /books/ возвращает 204 No Content.
      */
     @Test
     void getAllNoContentTest() throws Exception {
-        when(bookAssembler.getFullAllBooks()).thenReturn(List.of());
+        when(bookAssembler.getFullAllBooks(0L, 50, BookField.ALL)).thenReturn(new BookPageDTO(List.of(), null));
 
         mockMvc.perform(get("/books/"))
                 .andExpect(status().isNoContent());
@@ -69,7 +147,7 @@ class BookControllerTest {
         BookWithAverageRatingDTO dto = new BookWithAverageRatingDTO(book);
         dto.setAverageRating(7.0f);
 
-        when(bookAssembler.getFullAllBooks()).thenReturn(List.of(dto));
+        when(bookAssembler.getFullAllBooks(0L, 50, BookField.ALL)).thenReturn(new BookPageDTO(List.of(dto), null));
 
         mockMvc.perform(get("/books/"))
                 .andExpect(status().isOk())
@@ -86,12 +164,138 @@ class BookControllerTest {
                 .andExpect(jsonPath("$[0].averageRating").value(7.0));
     }
 
+    /**
+     * С параметром fields эндпоинт /books/ выводит только запрошенные поля.
+     */
+    @Test
+    void getAllFieldsTest() throws Exception {
+        Book book = new Book();
+        book.setId(1L);
+        book.setBookName("b");
+        book.setGenres(List.of(new Genre(1L, "g1")));
+        Set<BookField> bookFields = Set.of(BookField.ID, BookField.GENRES);
+        when(bookAssembler.getFullAllBooks(0L, 50, bookFields))
+                .thenReturn(new BookPageDTO(List.of(new BookWithAverageRatingDTO(book)), null));
+
+        mockMvc.perform(get("/books/").param("fields", "genres"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[0].genres[0].genreName").value("g1"))
+                .andExpect(jsonPath("$[0].bookName").doesNotExist())
+                .andExpect(jsonPath("$[0].authors").doesNotExist());
+    }
+
+    /**
+     * Если за страницей есть ещё книги, то эндпоинт /books/ возвращает курсор следующей страницы в заголовке.
+     */
+    @Test
+    void getAllNextCursorTest() throws Exception {
+        Book book = new Book();
+        book.setId(5L);
+        book.setBookName("b");
+        BookWithAverageRatingDTO dto = new BookWithAverageRatingDTO(book);
+
+        when(bookAssembler.getFullAllBooks(4L, 1, BookField.ALL)).thenReturn(new BookPageDTO(List.of(dto), 5L));
+
+        mockMvc.perform(get("/books/").param("after", "4").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(BookController.NEXT_CURSOR_HEADER, "5"))
+                .andExpect(jsonPath("$[0].id").value(5));
+    }
+
+    /**
+     * Если на последней странице больше нет книг, то заголовок с курсором не возвращается.
+     */
+    @Test
+    void getAllLastPageTest() throws Exception {
+        Book book = new Book();
+        book.setId(5L);
+        book.setBookName("b");
+        BookWithAverageRatingDTO dto = new BookWithAverageRatingDTO(book);
+
+        when(bookAssembler.getFullAllBooks(0L, 50, BookField.ALL)).thenReturn(new BookPageDTO(List.of(dto), null));
+
+        mockMvc.perform(get("/books/"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(BookController.NEXT_CURSOR_HEADER));
+    }
+
+    /**
+     * Если limit вне допустимого диапазона, то эндпоинт /books/ возвращает 400 Bad Request.
+     */
+    @Test
+    void getAllBadLimitTest() throws Exception {
+        when(bookAssembler.getFullAllBooks(0L, 100000, BookField.ALL)).thenThrow(new IllegalArgumentException("bad limit"));
+
+        mockMvc.perform(get("/books/").param("limit", "100000"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * Выгрузка каталога /books/export возвращает по одной книге в формате JSON на строку,
+     * асинхронная обработка ограничена сроком выгрузки.
+     */
+    @Test
+    void exportAllTest() throws Exception {
+        Book b1 = new Book();
+        b1.setId(1L);
+        b1.setBookName("b1");
+        Book b2 = new Book();
+        b2.setId(2L);
+        b2.setBookName("b2");
+
+        doAnswer(invocation -> {
+            Consumer<List<BookWithAverageRatingDTO>> chunkConsumer = invocation.getArgument(0);
+            chunkConsumer.accept(List.of(new BookWithAverageRatingDTO(b1)));
+            chunkConsumer.accept(List.of(new BookWithAverageRatingDTO(b2)));
+            return null;
+        }).when(bookAssembler).exportAllBooks(any());
+
+        MvcResult mvcResult = mockMvc.perform(get("/books/export"))
+                .andExpect(request().asyncStarted())
+                .andExpect(request().attribute(ConcurrencyLimitFilter.LONG_RUNNING_ATTRIBUTE, true))
+                .andReturn();
+        assertThat(mvcResult.getRequest().getAsyncContext().getTimeout()).isEqualTo(Duration.ofMinutes(30).toMillis());
+
+        String body = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        String[] lines = body.split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(objectMapper.readTree(lines[0]).get("bookName").asText()).isEqualTo("b1");
+        assertThat(objectMapper.readTree(lines[1]).get("bookName").asText()).isEqualTo("b2");
+    }
+
+    /**
+     * Массовый импорт /books/bulk принимает NDJSON и возвращает результат импорта.
+     */
+    @Test
+    void importBooksTest() throws Exception {
+        ImportResultDTO importResultDTO = new ImportResultDTO();
+        importResultDTO.setImported(2);
+        importResultDTO.setRejected(1);
+        importResultDTO.getErrors().add(new ImportErrorDTO(0, 1L, "No authors"));
+        when(bookImportService.importBooks(any())).thenReturn(importResultDTO);
+
+        mockMvc.perform(post("/books/bulk")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"bookName\": \"b1\"}\n"))
+                .andExpect(status().isOk())
+                .andExpect(request().attribute(ConcurrencyLimitFilter.LONG_RUNNING_ATTRIBUTE, true))
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.errors[0].record").value(1))
+                .andExpect(jsonPath("$.errors[0].message").value("No authors"));
+    }
+
     /**
      * Если книга по id не найдена, то эндпоинт /books/{id} возвращает 404 Not Found.
      */
     @Test
     void getBookByIdNotFoundTest() throws Exception {
-        when(bookAssembler.getFullBookWithAverageRatingDTO(1L)).thenReturn(null);
+        when(bookJsonCache.getBookJson(1L)).thenReturn(null);
 
         mockMvc.perform(get("/books/1"))
                 .andExpect(status().isNotFound());
@@ -113,10 +317,12 @@ class BookControllerTest {
         BookWithAverageRatingDTO dto = new BookWithAverageRatingDTO(book);
         dto.setAverageRating(null);
 
-        when(bookAssembler.getFullBookWithAverageRatingDTO(1L)).thenReturn(dto);
+        byte[] json = objectMapper.writeValueAsBytes(dto);
+        when(bookJsonCache.getBookJson(1L)).thenReturn(new BookJsonCache.BookJson(0, json, null));
 
-        mockMvc.perform(get("/books/1"))
+        mockMvc.perform(get("/books/1").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
                 .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
                 .andExpect(jsonPath("$.id").value(1))
                 .andExpect(jsonPath("$.bookName").value("b"))
                 .andExpect(jsonPath("$.authors[0].id").value(1))
@@ -125,6 +331,80 @@ class BookControllerTest {
                 .andExpect(jsonPath("$.genres[0].genreName").value("g"));
     }
 
+    /**
+     * Если клиент принимает gzip и для книги есть сжатый ответ, то эндпоинт /books/{id} отдаёт его с Content-Encoding: gzip,
+     * иначе отдаётся несжатый JSON.
+     */
+    @Test
+    void getBookByIdGzipTest() throws Exception {
+        byte[] json = "{\"id\":1}".getBytes(StandardCharsets.UTF_8);
+        byte[] gzip = {31, -117, 8, 0};
+        when(bookJsonCache.getBookJson(1L)).thenReturn(new BookJsonCache.BookJson(0, json, gzip));
+
+        mockMvc.perform(get("/books/1").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(content().bytes(gzip));
+
+        mockMvc.perform(get("/books/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().bytes(json));
+    }
+
+    /**
+     * gzip с q=0 или "*;q=0" без упоминания gzip запрещают сжатый ответ, "*" с q > 0 разрешает.
+     */
+    @Test
+    void getBookByIdGzipQualityTest() throws Exception {
+        byte[] json = "{\"id\":1}".getBytes(StandardCharsets.UTF_8);
+        byte[] gzip = {31, -117, 8, 0};
+        when(bookJsonCache.getBookJson(1L)).thenReturn(new BookJsonCache.BookJson(0, json, gzip));
+
+        for (String acceptEncoding : List.of("gzip;q=0, deflate", "GZIP; Q=0.0", "*, gzip;q=0", "identity, *;q=0", "gzip;q=x")) {
+            mockMvc.perform(get("/books/1").header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding))
+                    .andExpect(status().isOk())
+                    .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                    .andExpect(content().bytes(json));
+        }
+        for (String acceptEncoding : List.of("*;q=0.5", "deflate, gzip;q=0.1", "x-gzip, GZip")) {
+            mockMvc.perform(get("/books/1").header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                    .andExpect(content().bytes(gzip));
+        }
+    }
+
+    /**
+     * С параметром fields книга собирается из запрошенных полей в обход кэша готовых ответов, id выводится всегда.
+     */
+    @Test
+    void getBookByIdFieldsTest() throws Exception {
+        Book book = new Book();
+        book.setId(1L);
+        book.setBookName("b");
+        when(bookAssembler.getBooksByIds(List.of(1L), Set.of(BookField.ID, BookField.BOOK_NAME)))
+                .thenReturn(List.of(new BookWithAverageRatingDTO(book)));
+
+        mockMvc.perform(get("/books/1").param("fields", "bookName"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(1))
+                .andExpect(jsonPath("$.bookName").value("b"))
+                .andExpect(jsonPath("$.authors").doesNotExist())
+                .andExpect(jsonPath("$.averageRating").doesNotExist());
+        verifyNoInteractions(bookJsonCache);
+    }
+
+    /**
+     * Неизвестное поле в параметре fields отклоняется с 400 Bad Request.
+     */
+    @Test
+    void getBookByIdUnknownFieldTest() throws Exception {
+        mockMvc.perform(get("/books/1").param("fields", "id,isbn"))
+                .andExpect(status().isBadRequest());
+    }
+
     /**
      * Если книга для обновления не найдена, то эндпоинт PUT /books/{id} возвращает 404 Not Found.
      */
@@ -307,7 +587,7 @@ class BookControllerTest {
      */
     @Test
     void getBooksByAuthorNameNoContentTest() throws Exception {
-        when(bookAssembler.getBooksByAuthorName("a")).thenReturn(List.of());
+        when(bookAssembler.getBooksByAuthorName("a", 0L, 50, BookField.ALL)).thenReturn(new BookPageDTO(List.of(), null));
 
         mockMvc.perform(get("/books").param("authorName", "a"))
                 .andExpect(status().isNoContent());
@@ -329,7 +609,7 @@ class BookControllerTest {
         BookWithAverageRatingDTO dto = new BookWithAverageRatingDTO(book);
         dto.setAverageRating(null);
 
-        when(bookAssembler.getBooksByAuthorName("a")).thenReturn(List.of(dto));
+        when(bookAssembler.getBooksByAuthorName("a", 0L, 50, BookField.ALL)).thenReturn(new BookPageDTO(List.of(dto), null));
 
         mockMvc.perform(get("/books").param("authorName", "a"))
                 .andExpect(status().isOk())
@@ -346,7 +626,7 @@ class BookControllerTest {
      */
     @Test
     void getBooksByAuthorIdNoContentTest() throws Exception {
-        when(bookAssembler.getBooksByAuthorId(1L)).thenReturn(List.of());
+        when(bookAssembler.getBooksByAuthorId(1L, 0L, 50, BookField.ALL)).thenReturn(new BookPageDTO(List.of(), null));
 
         mockMvc.perform(get("/books/by-author/1"))
                 .andExpect(status().isNoContent());
@@ -368,7 +648,7 @@ class BookControllerTest {
         BookWithAverageRatingDTO dto = new BookWithAverageRatingDTO(book);
         dto.setAverageRating(null);
 
-        when(bookAssembler.getBooksByAuthorId(1L)).thenReturn(List.of(dto));
+        when(bookAssembler.getBooksByAuthorId(1L, 0L, 50, BookField.ALL)).thenReturn(new BookPageDTO(List.of(dto), null));
 
         mockMvc.perform(get("/books/by-author/1"))
                 .andExpect(status().isOk())
@@ -385,7 +665,7 @@ class BookControllerTest {
      */
     @Test
     void getBooksByGenreIdNoContentTest() throws Exception {
-        when(bookAssembler.getBooksByGenreId(1L)).thenReturn(List.of());
+        when(bookAssembler.getBooksByGenreId(1L, 0L, 50, BookField.ALL)).thenReturn(new BookPageDTO(List.of(), null));
 
         mockMvc.perform(get("/books/genre/1"))
                 .andExpect(status().isNoContent());
@@ -407,7 +687,7 @@ class BookControllerTest {
         BookWithAverageRatingDTO dto = new BookWithAverageRatingDTO(book);
         dto.setAverageRating(null);
 
-        when(bookAssembler.getBooksByGenreId(1L)).thenReturn(List.of(dto));
+        when(bookAssembler.getBooksByGenreId(1L, 0L, 50, BookField.ALL)).thenReturn(new BookPageDTO(List.of(dto), null));
 
         mockMvc.perform(get("/books/genre/1"))
                 .andExpect(status().isOk())
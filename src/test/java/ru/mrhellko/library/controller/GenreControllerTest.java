@@ -57,6 +57,19 @@ public class GenreControllerTest {
                 .andExpect(jsonPath("$[0].genreName").value("g"));
     }
 
+    /**
+     * Эндпоинт /genres?ids= возвращает жанры в порядке, который вернул сервис.
+     */
+    @Test
+    void getGenresByIdsTest() throws Exception {
+        when(genreService.getGenresByIds(List.of(2L, 1L))).thenReturn(List.of(new Genre(2L, "g2"), new Genre(1L, "g1")));
+
+        mockMvc.perform(get("/genres").param("ids", "2,1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(2))
+                .andExpect(jsonPath("$[1].id").value(1));
+    }
+
     /**
      * Если жанр не найден, то эндпоинт /genres/{id} возвращает 404 Not Found.
      */
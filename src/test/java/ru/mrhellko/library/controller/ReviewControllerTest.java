@@ -9,9 +9,14 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import ru.mrhellko.library.Entity.BookReview;
 import ru.mrhellko.library.assembler.BookReviewAssembler;
+import ru.mrhellko.library.assembler.BookReviewImportService;
+import ru.mrhellko.library.dto.BookRatingDistributionDTO;
 import ru.mrhellko.library.dto.BookReviewByBookIdDTO;
 import ru.mrhellko.library.dto.BookReviewByReviewerNameDTO;
+import ru.mrhellko.library.dto.BookReviewPageDTO;
+import ru.mrhellko.library.dto.ImportResultDTO;
 import ru.mrhellko.library.exception.NotFoundException;
+import ru.mrhellko.library.limiter.ConcurrencyLimitFilter;
 
 import java.util.List;
 
@@ -24,7 +29,9 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(ReviewController.class)
@@ -39,19 +46,22 @@ class ReviewControllerTest {
     @MockitoBean
     private BookReviewAssembler bookReviewAssembler;
 
+    @MockitoBean
+    private BookReviewImportService bookReviewImportService;
+
     /**
      * Если по книге нет отзывов, то эндпоинт /reviews/book/{bookId} возвращает 204 No Content.
      */
     @Test
     void getReviewByBookIdNoContentTest() throws Exception {
-        when(bookReviewAssembler.getReviewByBookId(1L)).thenReturn(List.of());
+        when(bookReviewAssembler.getReviewByBookId(1L, Long.MAX_VALUE, 50)).thenReturn(new BookReviewPageDTO(List.of(), null));
 
         mockMvc.perform(get("/reviews/book/1"))
                 .andExpect(status().isNoContent());
     }
 
     /**
-     * Если по книге есть отзывы, то эндпоинт /reviews/book/{bookId} возвращает 200 OK и JSON со списком.
+     * Если по книге есть отзывы, то эндпоинт /reviews/book/{bookId} возвращает 200 OK, JSON со списком и курсор в заголовке.
      */
     @Test
     void getReviewByBookIdOkTest() throws Exception {
@@ -62,15 +72,59 @@ class ReviewControllerTest {
 
         BookReviewByBookIdDTO dto = new BookReviewByBookIdDTO(review);
 
-        when(bookReviewAssembler.getReviewByBookId(1L)).thenReturn(List.of(dto));
+        when(bookReviewAssembler.getReviewByBookId(1L, 20L, 1)).thenReturn(new BookReviewPageDTO(List.of(dto), 15L));
 
-        mockMvc.perform(get("/reviews/book/1"))
+        mockMvc.perform(get("/reviews/book/1").param("before", "20").param("limit", "1"))
                 .andExpect(status().isOk())
+                .andExpect(header().string(BookController.NEXT_CURSOR_HEADER, "15"))
                 .andExpect(jsonPath("$[0].reviewerName").value("Anna"))
                 .andExpect(jsonPath("$[0].reviewText").value("text"))
                 .andExpect(jsonPath("$[0].rating").value(8));
     }
 
+    /**
+     * Если limit вне диапазона, то эндпоинт /reviews/book/{bookId} возвращает 400 Bad Request.
+     */
+    @Test
+    void getReviewByBookIdBadLimitTest() throws Exception {
+        when(bookReviewAssembler.getReviewByBookId(1L, Long.MAX_VALUE, 0))
+                .thenThrow(new IllegalArgumentException("Limit must be between 1 and 500"));
+
+        mockMvc.perform(get("/reviews/book/1").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * Эндпоинт /reviews/book/{bookId}/summary возвращает распределение оценок без текстов отзывов.
+     */
+    @Test
+    void getRatingDistributionTest() throws Exception {
+        BookRatingDistributionDTO distribution = new BookRatingDistributionDTO();
+        distribution.setBookId(1L);
+        distribution.setReviewCount(2L);
+        distribution.setAverageRating(5.5f);
+        distribution.getRatings().put(3, 1L);
+        distribution.getRatings().put(8, 1L);
+        when(bookReviewAssembler.getRatingDistribution(1L)).thenReturn(distribution);
+
+        mockMvc.perform(get("/reviews/book/1/summary"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.reviewCount").value(2))
+                .andExpect(jsonPath("$.averageRating").value(5.5))
+                .andExpect(jsonPath("$.ratings.8").value(1));
+    }
+
+    /**
+     * Если книги нет, то эндпоинт /reviews/book/{bookId}/summary возвращает 404 Not Found.
+     */
+    @Test
+    void getRatingDistributionNotFoundTest() throws Exception {
+        when(bookReviewAssembler.getRatingDistribution(1L)).thenReturn(null);
+
+        mockMvc.perform(get("/reviews/book/1/summary"))
+                .andExpect(status().isNotFound());
+    }
+
     /**
      * Если по reviewerName отзывы не найдены, то эндпоинт /reviews?reviewerName=... возвращает 204 No Content.
      */
@@ -236,4 +290,39 @@ class ReviewControllerTest {
         mockMvc.perform(delete("/reviews/1"))
                 .andExpect(status().isOk());
     }
+
+    /**
+     * Массовый импорт отзывов в CSV передаётся в импорт CSV и возвращает результат импорта.
+     */
+    @Test
+    void importBookReviewsCsvTest() throws Exception {
+        ImportResultDTO importResultDTO = new ImportResultDTO();
+        importResultDTO.setImported(1);
+        when(bookReviewImportService.importReviewsCsv(any())).thenReturn(importResultDTO);
+
+        mockMvc.perform(post("/reviews/bulk")
+                        .contentType("text/csv")
+                        .content("bookId,rating,reviewerName,reviewText\n1,8,Anna,Text\n"))
+                .andExpect(status().isOk())
+                .andExpect(request().attribute(ConcurrencyLimitFilter.LONG_RUNNING_ATTRIBUTE, true))
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.rejected").value(0));
+    }
+
+    /**
+     * Массовый импорт отзывов в NDJSON передаётся в импорт JSON.
+     */
+    @Test
+    void importBookReviewsNdjsonTest() throws Exception {
+        ImportResultDTO importResultDTO = new ImportResultDTO();
+        importResultDTO.setImported(1);
+        when(bookReviewImportService.importReviews(any())).thenReturn(importResultDTO);
+
+        mockMvc.perform(post("/reviews/bulk")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"bookId\": 1, \"rating\": 8}\n"))
+                .andExpect(status().isOk())
+                .andExpect(request().attribute(ConcurrencyLimitFilter.LONG_RUNNING_ATTRIBUTE, true))
+                .andExpect(jsonPath("$.imported").value(1));
+    }
 }
@@ -1,10 +1,28 @@
 package ru.mrhellko.library.dao;
 
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
 import org.springframework.test.context.jdbc.Sql;
 
+import java.util.Objects;
+
 @Sql(scripts = {
         "/db/init.sql",
         "/db/dataset.sql"
 })
 public abstract class AbstractDAOTest {
+    @Autowired
+    private CacheManager cacheManager;
+
+    /**
+     * Данные пересоздаются перед каждым тестом, а изменения тестов откатываются,
+     * поэтому закэшированные справочники предыдущего теста могут не совпадать с БД.
+     */
+    @BeforeEach
+    void clearCaches() {
+        for (String cacheName : cacheManager.getCacheNames()) {
+            Objects.requireNonNull(cacheManager.getCache(cacheName)).clear();
+        }
+    }
 }
@@ -3,8 +3,10 @@ package ru.mrhellko.library.dao;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
 import org.springframework.transaction.annotation.Transactional;
 import ru.mrhellko.library.Entity.Author;
+import ru.mrhellko.library.configuration.CacheConfiguration;
 import ru.mrhellko.library.dto.BookAuthorDTO;
 
 import java.util.HashSet;
@@ -18,6 +20,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 public class AuthorDAOTest extends AbstractDAOTest {
     @Autowired
     private AuthorDAO authorDAO;
+    @Autowired
+    private CacheManager cacheManager;
 
     /**
      * Если автор по id не найден, то возвращается null.
@@ -39,6 +43,31 @@ public class AuthorDAOTest extends AbstractDAOTest {
         assertThat(author.getAuthorName()).isNotBlank();
     }
 
+    /**
+     * Повторное чтение автора по id берётся из кэша, а обновление автора сбрасывает его запись в кэше.
+     */
+    @Test
+    void getAuthorByIdCachedTest() {
+        Author first = authorDAO.getAuthorById(1L);
+        Author second = authorDAO.getAuthorById(1L);
+        assertThat(second).isSameAs(first);
+
+        authorDAO.updateAuthor(new Author(1L, "name"));
+
+        Author updated = authorDAO.getAuthorById(1L);
+        assertThat(updated).isNotSameAs(first);
+        assertThat(updated.getAuthorName()).isEqualTo("name");
+    }
+
+    /**
+     * Отсутствующий автор не кэшируется, чтобы созданный позже автор с этим id сразу находился.
+     */
+    @Test
+    void getAuthorByIdNullNotCachedTest() {
+        assertThat(authorDAO.getAuthorById(99999L)).isNull();
+        assertThat(cacheManager.getCache(CacheConfiguration.AUTHORS_CACHE).get(99999L)).isNull();
+    }
+
     /**
      * Обновление автора по id изменяет сохранённые значения в базе данных.
      */
@@ -87,6 +116,17 @@ public class AuthorDAOTest extends AbstractDAOTest {
         assertThat(authorDAO.getAuthorById(saved.getId())).isNull();
     }
 
+    /**
+     * Авторы по набору id читаются одним запросом, несуществующие id пропускаются.
+     */
+    @Test
+    void getAuthorsByIdsTest() {
+        List<Author> authors = authorDAO.getAuthorsByIds(Set.of(1L, 3L, 99999L));
+        assertThat(authors)
+                .extracting(Author::getAuthorName)
+                .containsExactlyInAnyOrder("Joan Rowling", "Джордж Мартин");
+    }
+
     /**
      * Удаление несуществующего автора возвращает 0.
      */
@@ -129,4 +169,22 @@ public class AuthorDAOTest extends AbstractDAOTest {
         assertThat(dto).isNotNull();
         assertThat(dto).isEmpty();
     }
+
+    /**
+     * По сету id одним запросом возвращает только те id, которых нет в базе данных.
+     */
+    @Test
+    void getMissingAuthorIdsTest() {
+        Set<Long> missingIds = authorDAO.getMissingAuthorIds(new HashSet<>(Set.of(1L, 2L, 99998L, 99999L)));
+        assertThat(missingIds).containsExactlyInAnyOrder(99998L, 99999L);
+    }
+
+    /**
+     * Если все id из сета есть в базе данных, то возвращается пустой сет.
+     */
+    @Test
+    void getMissingAuthorIdsAllFoundTest() {
+        assertThat(authorDAO.getMissingAuthorIds(new HashSet<>(Set.of(1L, 2L)))).isEmpty();
+        assertThat(authorDAO.getMissingAuthorIds(new HashSet<>())).isEmpty();
+    }
 }
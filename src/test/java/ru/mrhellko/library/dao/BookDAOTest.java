@@ -4,9 +4,16 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.transaction.annotation.Transactional;
+import ru.mrhellko.library.Entity.Author;
 import ru.mrhellko.library.Entity.Book;
+import ru.mrhellko.library.Entity.Genre;
+import ru.mrhellko.library.dto.BookGenreRatingDTO;
+import ru.mrhellko.library.dto.BookRatingDTO;
+import ru.mrhellko.library.dto.BookWithAverageRatingDTO;
 
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -21,7 +28,7 @@ public class BookDAOTest extends AbstractDAOTest {
      */
     @Test
     void getBooksByAuthorNameNotFoundTest() {
-        List<Book> books = bookDAO.getBooksByAuthorName("not existence author");
+        List<Book> books = bookDAO.getBooksByAuthorName("not existence author", 0L, 100);
         assertThat(books).isEmpty();
     }
 
@@ -30,7 +37,7 @@ public class BookDAOTest extends AbstractDAOTest {
      */
     @Test
     void getBooksByAuthorNameFoundManyTest() {
-        List<Book> books = bookDAO.getBooksByAuthorName("И");
+        List<Book> books = bookDAO.getBooksByAuthorName("И", 0L, 100);
         assertThat(books).hasSize(5);
         assertThat(books)
                 .map(Book::getBookName)
@@ -46,18 +53,27 @@ public class BookDAOTest extends AbstractDAOTest {
      */
     @Test
     void getBooksByAuthorNameFoundOneTest() {
-        List<Book> books = bookDAO.getBooksByAuthorName("Joan Rowling");
+        List<Book> books = bookDAO.getBooksByAuthorName("Joan Rowling", 0L, 100);
         assertThat(books)
                 .map(Book::getBookName)
                 .allMatch(book -> book.equals("Гарри Поттер"));
     }
 
+    /**
+     * Спецсимволы like в строке поиска трактуются буквально, а не как шаблон.
+     */
+    @Test
+    void getBooksByAuthorNameEscapesWildcardsTest() {
+        assertThat(bookDAO.getBooksByAuthorName("%", 0L, 100)).isEmpty();
+        assertThat(bookDAO.getBooksByAuthorName("_", 0L, 100)).isEmpty();
+    }
+
     /**
      * Если книга по id автора не нашлась, то возвращается пустой список
      */
     @Test
     void getBooksByAuthorIdNotFoundTest() {
-        List<Book> books = bookDAO.getBooksByAuthorId(99999L);
+        List<Book> books = bookDAO.getBooksByAuthorId(99999L, 0L, 100);
         assertThat(books).isEmpty();
     }
 
@@ -66,7 +82,7 @@ public class BookDAOTest extends AbstractDAOTest {
      */
     @Test
     void getBooksByAuthorIdFoundManyTest() {
-        List<Book> books = bookDAO.getBooksByAuthorId(4L);
+        List<Book> books = bookDAO.getBooksByAuthorId(4L, 0L, 100);
         assertThat(books)
                 .map(Book::getBookName)
                 .contains("Благие знамения")
@@ -78,7 +94,7 @@ public class BookDAOTest extends AbstractDAOTest {
      */
     @Test
     void getBooksByAuthorIdFoundOneTest() {
-        List<Book> books = bookDAO.getBooksByAuthorId(1L);
+        List<Book> books = bookDAO.getBooksByAuthorId(1L, 0L, 100);
         assertThat(books)
                 .map(Book::getBookName)
                 .allMatch(book -> book.equals("Гарри Поттер"));
@@ -89,7 +105,7 @@ public class BookDAOTest extends AbstractDAOTest {
      */
     @Test
     void getBooksByGenreIdNotFoundTest() {
-        List<Book> books = bookDAO.getBooksByGenreId(99999L);
+        List<Book> books = bookDAO.getBooksByGenreId(99999L, 0L, 100);
         assertThat(books).isEmpty();
     }
 
@@ -98,7 +114,7 @@ public class BookDAOTest extends AbstractDAOTest {
      */
     @Test
     void getBooksByGenreIdFoundManyTest() {
-        List<Book> books = bookDAO.getBooksByGenreId(1L);
+        List<Book> books = bookDAO.getBooksByGenreId(1L, 0L, 100);
         assertThat(books)
                 .map(Book::getBookName)
                 .contains("Гарри Поттер")
@@ -111,7 +127,7 @@ public class BookDAOTest extends AbstractDAOTest {
      */
     @Test
     void getBooksByGenreIdFoundOneTest() {
-        List<Book> books = bookDAO.getBooksByGenreId(2L);
+        List<Book> books = bookDAO.getBooksByGenreId(2L, 0L, 100);
         assertThat(books)
                 .map(Book::getBookName)
                 .allMatch(book -> book.equals("Гарри Поттер"));
@@ -137,12 +153,52 @@ public class BookDAOTest extends AbstractDAOTest {
         assertThat(book.getBookName()).isEqualTo("Гарри Поттер");
     }
 
+    /**
+     * Книги по набору id читаются одним запросом, несуществующие id пропускаются.
+     */
+    @Test
+    void getBooksByIdsTest() {
+        List<Book> books = bookDAO.getBooksByIds(Set.of(1L, 2L, 99999L));
+        assertThat(books)
+                .extracting(Book::getId)
+                .containsExactlyInAnyOrder(1L, 2L);
+        assertThat(bookDAO.getBooksByIds(Set.of())).isEmpty();
+    }
+
+    /**
+     * Книга по id читается вместе с авторами, жанрами и средней оценкой.
+     */
+    @Test
+    void getFullBookByIdTest() {
+        BookWithAverageRatingDTO book = bookDAO.getFullBookById(4);
+        assertThat(book).isNotNull();
+        assertThat(book.getBookName()).isEqualTo("Благие знамения");
+        assertThat(book.getAuthors()).extracting(Author::getId).containsExactly(4L, 5L);
+        assertThat(book.getAuthors()).extracting(Author::getAuthorName).containsExactly("Терри Пратчетт", "Нил Гейман");
+        assertThat(book.getGenres()).isNotEmpty();
+        assertThat(book.getAverageRating()).isEqualTo(10.0f);
+    }
+
+    /**
+     * Книга без отзывов читается со средней оценкой null, несуществующая книга - как null.
+     */
+    @Test
+    void getFullBookByIdWithoutReviewsTest() {
+        BookWithAverageRatingDTO book = bookDAO.getFullBookById(6);
+        assertThat(book).isNotNull();
+        assertThat(book.getAuthors()).extracting(Author::getId).containsExactly(7L, 8L);
+        assertThat(book.getGenres()).extracting(Genre::getGenreName).containsExactly("Юмор");
+        assertThat(book.getAverageRating()).isNull();
+
+        assertThat(bookDAO.getFullBookById(99999L)).isNull();
+    }
+
     /**
      * Получение всех книг возвращает не пустой список с начальными данными.
      */
     @Test
     void getAllTest() {
-        List<Book> books = bookDAO.getAll();
+        List<Book> books = bookDAO.getAll(0L, 100);
         assertThat(books).hasSizeGreaterThanOrEqualTo(6);
         assertThat(books)
                 .map(Book::getBookName)
@@ -154,6 +210,45 @@ public class BookDAOTest extends AbstractDAOTest {
                 .contains("Одноэтажная Америка");
     }
 
+    /**
+     * Постраничное получение книг возвращает книги по возрастанию id строго после курсора и не больше limit.
+     */
+    @Test
+    void getAllKeysetPageTest() {
+        List<Book> firstPage = bookDAO.getAll(0L, 2);
+        assertThat(firstPage)
+                .map(Book::getId)
+                .containsExactly(1L, 2L);
+
+        List<Book> secondPage = bookDAO.getAll(2L, 2);
+        assertThat(secondPage)
+                .map(Book::getId)
+                .containsExactly(3L, 4L);
+    }
+
+    /**
+     * Постраничный поиск по id жанра продолжает выдачу после курсора.
+     */
+    @Test
+    void getBooksByGenreIdKeysetPageTest() {
+        List<Book> books = bookDAO.getBooksByGenreId(1L, 1L, 1);
+        assertThat(books)
+                .map(Book::getBookName)
+                .containsExactly("Игра престолов");
+    }
+
+    /**
+     * Потоковое чтение возвращает все книги по возрастанию id.
+     */
+    @Test
+    void streamAllTest() {
+        try (Stream<Book> books = bookDAO.streamAll()) {
+            assertThat(books.map(Book::getId).toList())
+                    .hasSizeGreaterThanOrEqualTo(6)
+                    .isSorted();
+        }
+    }
+
     /**
      * Обновление книги по id изменяет сохранённые значения в базе данных.
      */
@@ -186,6 +281,45 @@ public class BookDAOTest extends AbstractDAOTest {
         assertThat(found.getBookName()).isEqualTo("New book");
     }
 
+    /**
+     * Пакетное добавление и удаление связей книги с авторами меняет выборку книг по автору.
+     */
+    @Test
+    void saveAndDeleteBookAuthorsTest() {
+        bookDAO.saveBookAuthors(6L, Set.of(1L, 2L));
+        assertThat(bookDAO.getBooksByAuthorId(2L, 0, 50)).extracting(Book::getId).containsExactly(2L, 6L);
+
+        bookDAO.deleteBookAuthors(6L, Set.of(1L, 2L));
+        assertThat(bookDAO.getBooksByAuthorId(2L, 0, 50)).extracting(Book::getId).containsExactly(2L);
+        assertThat(bookDAO.getBooksByAuthorId(1L, 0, 50)).extracting(Book::getId).containsExactly(1L);
+    }
+
+    /**
+     * Пачка книг сохраняется вместе со связями и пустыми сводками оценок, повторы связей не дублируются.
+     */
+    @Test
+    void saveBooksTest() {
+        Book first = new Book();
+        first.setBookName("First \"bulk\", book");
+        first.getAuthors().add(new Author(1L, null));
+        first.getAuthors().add(new Author(1L, null));
+        first.getGenres().add(new Genre(1L, null));
+        Book second = new Book();
+        second.setBookName("Second bulk book");
+        second.getAuthors().add(new Author(2L, null));
+        second.getGenres().add(new Genre(2L, null));
+
+        bookDAO.saveBooks(List.of(first, second));
+
+        BookWithAverageRatingDTO saved = bookDAO.getFullBookById(first.getId());
+        assertThat(saved).isNotNull();
+        assertThat(saved.getBookName()).isEqualTo("First \"bulk\", book");
+        assertThat(saved.getAuthors()).extracting(Author::getId).containsExactly(1L);
+        assertThat(saved.getGenres()).extracting(Genre::getId).containsExactly(1L);
+        assertThat(saved.getAverageRating()).isNull();
+        assertThat(bookDAO.getBooksByGenreId(2L, 0, 50)).extracting(Book::getId).contains(second.getId());
+    }
+
     /**
      * Удаление существующей книги возвращает 1 и книга перестаёт находиться по id.
      */
@@ -209,4 +343,56 @@ public class BookDAOTest extends AbstractDAOTest {
         int deleted = bookDAO.deleteBookById(99999L);
         assertThat(deleted).isEqualTo(0);
     }
+
+    /**
+     * Книги по id отдаются с id жанров и сводкой оценок, книги без отзывов с нулевой сводкой,
+     * сводка всего каталога складывает оценки всех книг.
+     */
+    @Test
+    void getBookGenreRatingsByIdsAndRatingTotalsTest() {
+        List<BookGenreRatingDTO> ratings = bookDAO.getBookGenreRatingsByIds(Set.of(1L, 4L, 6L, 99999L));
+
+        assertThat(ratings).extracting(BookGenreRatingDTO::getBookId).containsExactlyInAnyOrder(1L, 4L, 6L);
+        BookGenreRatingDTO goodOmens = ratings.stream().filter(r -> r.getBookId() == 4L).findFirst().orElseThrow();
+        assertThat(goodOmens.getBookName()).isEqualTo("Благие знамения");
+        assertThat(goodOmens.getGenreIds()).containsExactly(6L);
+        assertThat(goodOmens.getReviewCount()).isEqualTo(1L);
+        assertThat(goodOmens.getRatingSum()).isEqualTo(10L);
+        BookGenreRatingDTO harryPotter = ratings.stream().filter(r -> r.getBookId() == 1L).findFirst().orElseThrow();
+        assertThat(harryPotter.getGenreIds()).containsExactly(1L, 2L, 5L, 6L);
+        assertThat(harryPotter.getReviewCount()).isEqualTo(2L);
+        assertThat(harryPotter.getRatingSum()).isEqualTo(11L);
+        BookGenreRatingDTO oneStoryAmerica = ratings.stream().filter(r -> r.getBookId() == 6L).findFirst().orElseThrow();
+        assertThat(oneStoryAmerica.getReviewCount()).isEqualTo(0L);
+
+        BookRatingDTO totals = bookDAO.getRatingTotals();
+        assertThat(totals.getReviewCount()).isEqualTo(4L);
+        assertThat(totals.getRatingSum()).isEqualTo(28L);
+    }
+
+    /**
+     * Лучшие книги по сглаженной средней: при средней каталога 7 и 10 голосах Благие знамения (одна десятка)
+     * выше Задачи трех тел (одна семёрка) и Гарри Поттера (8 и 3), книги без отзывов не попадают.
+     */
+    @Test
+    void getTopBookGenreRatingsTest() {
+        assertThat(bookDAO.getTopBookGenreRatings(null, 10, 7.0, 10))
+                .extracting(BookGenreRatingDTO::getBookId).containsExactly(4L, 2L, 1L);
+        assertThat(bookDAO.getTopBookGenreRatings(null, 10, 7.0, 2))
+                .extracting(BookGenreRatingDTO::getBookId).containsExactly(4L, 2L);
+        assertThat(bookDAO.getTopBookGenreRatings(6L, 10, 7.0, 10))
+                .extracting(BookGenreRatingDTO::getBookId).containsExactly(4L, 1L);
+        assertThat(bookDAO.getTopBookGenreRatings(99999L, 10, 7.0, 10)).isEmpty();
+    }
+
+    /**
+     * Id книг автора и жанра читаются по таблицам связей, для автора и жанра без книг возвращается пустой список.
+     */
+    @Test
+    void getBookIdsByAuthorIdAndGenreIdTest() {
+        assertThat(bookDAO.getBookIdsByAuthorId(4L)).containsExactly(4L);
+        assertThat(bookDAO.getBookIdsByGenreId(6L)).containsExactlyInAnyOrder(1L, 4L, 6L);
+        assertThat(bookDAO.getBookIdsByAuthorId(99999L)).isEmpty();
+        assertThat(bookDAO.getBookIdsByGenreId(99999L)).isEmpty();
+    }
 }
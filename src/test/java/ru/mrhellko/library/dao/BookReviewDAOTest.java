@@ -5,9 +5,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.transaction.annotation.Transactional;
 import ru.mrhellko.library.Entity.BookReview;
+import ru.mrhellko.library.dto.BookRatingDTO;
+import ru.mrhellko.library.dto.BookRatingDistributionDTO;
 import ru.mrhellko.library.dto.BookReviewByReviewerNameDTO;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -45,21 +49,74 @@ public class BookReviewDAOTest extends AbstractDAOTest {
      */
     @Test
     void getReviewByBookIdNotFoundTest() {
-        List<BookReview> reviews = bookReviewDAO.getReviewByBookId(99999);
+        List<BookReview> reviews = bookReviewDAO.getReviewByBookId(99999, Long.MAX_VALUE, 50);
         assertThat(reviews).isEmpty();
     }
 
     /**
-     * Если у книги есть отзывы, то возвращается список отзывов и у всех отзывов корректный bookId.
+     * Если у книги есть отзывы, то возвращается список отзывов от новых к старым и у всех отзывов корректный bookId.
      */
     @Test
     void getReviewByBookIdFoundTest() {
-        List<BookReview> reviews = bookReviewDAO.getReviewByBookId(1);
-        assertThat(reviews).isNotEmpty();
+        List<BookReview> reviews = bookReviewDAO.getReviewByBookId(1, Long.MAX_VALUE, 50);
+        assertThat(reviews).extracting(BookReview::getId).containsExactly(3L, 1L);
         assertThat(reviews)
                 .allMatch(r -> r.getBookId().equals(1L));
     }
 
+    /**
+     * Следующая страница начинается с отзыва старше курсора before и содержит не больше limit отзывов.
+     */
+    @Test
+    void getReviewByBookIdKeysetPageTest() {
+        assertThat(bookReviewDAO.getReviewByBookId(1, Long.MAX_VALUE, 1))
+                .extracting(BookReview::getId).containsExactly(3L);
+        assertThat(bookReviewDAO.getReviewByBookId(1, 3L, 1))
+                .extracting(BookReview::getId).containsExactly(1L);
+        assertThat(bookReviewDAO.getReviewByBookId(1, 1L, 1)).isEmpty();
+    }
+
+    /**
+     * Распределение оценок книги берётся из сводки: количество, среднее и число отзывов по каждой оценке.
+     */
+    @Test
+    void getRatingDistributionTest() {
+        BookRatingDistributionDTO distribution = bookReviewDAO.getRatingDistribution(1);
+        assertThat(distribution).isNotNull();
+        assertThat(distribution.getReviewCount()).isEqualTo(2L);
+        assertThat(distribution.getAverageRating()).isEqualTo(5.5f);
+        assertThat(distribution.getRatings()).hasSize(10);
+        assertThat(distribution.getRatings().get(3)).isEqualTo(1L);
+        assertThat(distribution.getRatings().get(8)).isEqualTo(1L);
+        assertThat(distribution.getRatings().get(10)).isEqualTo(0L);
+
+        assertThat(bookReviewDAO.getRatingDistribution(6).getAverageRating()).isNull();
+        assertThat(bookReviewDAO.getRatingDistribution(99999)).isNull();
+    }
+
+    /**
+     * По сету bookId возвращает количество и сумму оценок только для книг с отзывами.
+     */
+    @Test
+    void getRatingsForBooksTest() {
+        Set<Long> bookIds = new HashSet<>(Set.of(1L, 2L, 3L));
+
+        List<BookRatingDTO> ratings = bookReviewDAO.getRatingsForBooks(bookIds);
+        assertThat(ratings)
+                .containsExactlyInAnyOrder(
+                        new BookRatingDTO(1L, 2L, 11L),
+                        new BookRatingDTO(2L, 1L, 7L));
+    }
+
+    /**
+     * По пустому сету bookIds возвращает пустую коллекцию.
+     */
+    @Test
+    void getRatingsForBooksEmptyBookId() {
+        List<BookRatingDTO> ratings = bookReviewDAO.getRatingsForBooks(new HashSet<>());
+        assertThat(ratings).isEmpty();
+    }
+
     /**
      * Если по reviewerName не найдено отзывов, то возвращается пустой список.
      */
@@ -83,6 +140,19 @@ public class BookReviewDAOTest extends AbstractDAOTest {
                 .allMatch(r -> !r.getAuthorNames().isEmpty());
     }
 
+    /**
+     * Авторы и жанры книги отзыва возвращаются списками, у книги с двумя авторами запятые не дробят имена.
+     */
+    @Test
+    void getReviewByReviewerNameAuthorsAndGenresTest() {
+        List<BookReviewByReviewerNameDTO> reviews = bookReviewDAO.getReviewByReviewerName("Fiona");
+        assertThat(reviews).hasSize(1);
+        BookReviewByReviewerNameDTO review = reviews.getFirst();
+        assertThat(review.getBookName()).isEqualTo("Благие знамения");
+        assertThat(review.getAuthorNames()).containsExactly("Терри Пратчетт", "Нил Гейман");
+        assertThat(review.getGenreNames()).containsExactly("Юмор");
+    }
+
     /**
      * Обновление отзыва по id изменяет сохранённые значения в базе данных.
      */
@@ -154,4 +224,58 @@ public class BookReviewDAOTest extends AbstractDAOTest {
         int deleted = bookReviewDAO.deleteBookReviewById(99999L);
         assertThat(deleted).isEqualTo(0);
     }
+
+    /**
+     * Сохранение, обновление и удаление отзыва поддерживают сводку оценок книги в актуальном состоянии.
+     */
+    @Test
+    void ratingSummaryFollowsReviewWritesTest() {
+        BookReview newReview = new BookReview();
+        newReview.setBookId(3L);
+        newReview.setRating((byte) 9);
+        newReview.setReviewerName("Test");
+        newReview.setReviewText("Good book");
+
+        BookReview saved = bookReviewDAO.saveBookReview(newReview);
+        assertThat(bookReviewDAO.getRatingsForBooks(Set.of(3L)))
+                .containsExactly(new BookRatingDTO(3L, 1L, 9L));
+
+        saved.setBookId(2L);
+        saved.setRating((byte) 5);
+        bookReviewDAO.updateBookReview(saved);
+        assertThat(bookReviewDAO.getRatingsForBooks(Set.of(2L, 3L)))
+                .containsExactly(new BookRatingDTO(2L, 2L, 12L));
+
+        bookReviewDAO.deleteBookReviewById(saved.getId());
+        assertThat(bookReviewDAO.getRatingsForBooks(Set.of(2L)))
+                .containsExactly(new BookRatingDTO(2L, 1L, 7L));
+    }
+
+    /**
+     * Пачка отзывов сохраняется целиком, а сводка оценок увеличивается на сумму оценок по каждой книге.
+     */
+    @Test
+    void saveBookReviewsTest() {
+        List<BookReview> bookReviews = List.of(
+                newReview(3L, (byte) 9),
+                newReview(3L, (byte) 4),
+                newReview(1L, (byte) 10));
+
+        bookReviewDAO.saveBookReviews(bookReviews);
+
+        assertThat(bookReviews).allMatch(bookReview -> bookReview.getId() != null);
+        assertThat(bookReviewDAO.getReviewByBookId(3L, Long.MAX_VALUE, 50)).hasSize(2);
+        assertThat(new HashSet<>(bookReviewDAO.getRatingsForBooks(Set.of(1L, 3L)))).isEqualTo(Set.of(
+                new BookRatingDTO(1L, 3L, 21L),
+                new BookRatingDTO(3L, 2L, 13L)));
+    }
+
+    private static BookReview newReview(Long bookId, byte rating) {
+        BookReview bookReview = new BookReview();
+        bookReview.setBookId(bookId);
+        bookReview.setRating(rating);
+        bookReview.setReviewerName("Bulk");
+        bookReview.setReviewText("Text, with \"quotes\"");
+        return bookReview;
+    }
 }
@@ -0,0 +1,41 @@
+package ru.mrhellko.library.dao;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+
+class DeadlineJdbcTemplateTest {
+    private final DeadlineJdbcTemplate jdbcTemplate = new DeadlineJdbcTemplate(new SingleConnectionDataSource());
+
+    /**
+     * Внутри withDeadline запрос получает остаток срока, округлённый вверх до секунд.
+     */
+    @Test
+    void applyStatementSettingsWithDeadlineTest() throws Exception {
+        Statement statement = mock(Statement.class);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1500);
+
+        DeadlineJdbcTemplate.withDeadline(deadline, () -> {
+            jdbcTemplate.applyStatementSettings(statement);
+            return null;
+        });
+
+        verify(statement).setQueryTimeout(2);
+    }
+
+    /**
+     * Без срока таймаут запроса не задаётся.
+     */
+    @Test
+    void applyStatementSettingsWithoutDeadlineTest() throws Exception {
+        Statement statement = mock(Statement.class);
+
+        jdbcTemplate.applyStatementSettings(statement);
+
+        verify(statement, never()).setQueryTimeout(anyInt());
+    }
+}
@@ -36,6 +36,21 @@ public class GenreDAOTest extends AbstractDAOTest {
                 .contains("Юмор");
     }
 
+    /**
+     * Список жанров кэшируется и сбрасывается при сохранении нового жанра.
+     */
+    @Test
+    void getAllGenresCachedTest() {
+        List<Genre> first = genreDAO.getAllGenres();
+        assertThat(genreDAO.getAllGenres()).isSameAs(first);
+
+        genreDAO.saveGenre(new Genre(null, "name"));
+
+        List<Genre> updated = genreDAO.getAllGenres();
+        assertThat(updated).hasSize(first.size() + 1);
+        assertThat(updated).map(Genre::getGenreName).contains("name");
+    }
+
     /**
      * Если жанр по id не найден, то возвращается null.
      */
@@ -144,4 +159,22 @@ public class GenreDAOTest extends AbstractDAOTest {
         assertThat(dto).isNotNull();
         assertThat(dto).isEmpty();
     }
+
+    /**
+     * По сету id одним запросом возвращает только те id, которых нет в базе данных.
+     */
+    @Test
+    void getMissingGenreIdsTest() {
+        Set<Long> missingIds = genreDAO.getMissingGenreIds(new HashSet<>(Set.of(1L, 2L, 99998L, 99999L)));
+        assertThat(missingIds).containsExactlyInAnyOrder(99998L, 99999L);
+    }
+
+    /**
+     * Если все id из сета есть в базе данных, то возвращается пустой сет.
+     */
+    @Test
+    void getMissingGenreIdsAllFoundTest() {
+        assertThat(genreDAO.getMissingGenreIds(new HashSet<>(Set.of(1L, 2L)))).isEmpty();
+        assertThat(genreDAO.getMissingGenreIds(new HashSet<>())).isEmpty();
+    }
 }
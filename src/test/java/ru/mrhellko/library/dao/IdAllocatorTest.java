@@ -0,0 +1,59 @@
+package ru.mrhellko.library.dao;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+public class IdAllocatorTest extends AbstractDAOTest {
+    @Autowired
+    private IdAllocator idAllocator;
+
+    /**
+     * Id выдаются по возрастанию и без повторов, в том числе при переходе на следующий блок.
+     */
+    @Test
+    void nextIdAcrossBlocksTest() {
+        long previous = idAllocator.nextId("genres_seq");
+        for (int i = 0; i < IdAllocator.BLOCK_SIZE * 2; i++) {
+            long id = idAllocator.nextId("genres_seq");
+            assertThat(id).isGreaterThan(previous);
+            previous = id;
+        }
+    }
+
+    /**
+     * Параллельные запросы id из одной последовательности не получают одинаковых значений.
+     */
+    @Test
+    void nextIdConcurrentTest() throws Exception {
+        int threads = 8;
+        int idsPerThread = IdAllocator.BLOCK_SIZE * 3;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < idsPerThread; j++) {
+                        ids.add(idAllocator.nextId("book_reviews_seq"));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        assertThat(ids).hasSize(threads * idsPerThread);
+        assertThat(ids).allMatch(id -> id > 1000);
+    }
+}
@@ -0,0 +1,87 @@
+package ru.mrhellko.library.limiter;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AdaptiveLimiterTest {
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+    private static final long SLOW = Duration.ofSeconds(1).toNanos();
+
+    /**
+     * Запросы сверх лимита отклоняются и учитываются, освобождённое место снова доступно.
+     */
+    @Test
+    void tryAcquireRejectsOverLimitTest() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(2, 1, 10, Duration.ofMillis(100));
+
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isFalse();
+        assertThat(limiter.getInFlight()).isEqualTo(2);
+        assertThat(limiter.getRejected()).isEqualTo(1);
+
+        long start = System.nanoTime();
+        limiter.release(start, start + FAST, false);
+        assertThat(limiter.tryAcquire()).isTrue();
+    }
+
+    /**
+     * Быстрый ответ увеличивает лимит, только если лимит был занят хотя бы наполовину.
+     */
+    @Test
+    void fastResponseIncreasesUsedLimitTest() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(4, 1, 10, Duration.ofMillis(100));
+        long start = System.nanoTime();
+
+        limiter.tryAcquire();
+        limiter.release(start, start + FAST, false);
+        assertThat(limiter.getLimit()).isEqualTo(4);
+
+        limiter.tryAcquire();
+        limiter.tryAcquire();
+        limiter.release(start, start + FAST, false);
+        assertThat(limiter.getLimit()).isEqualTo(5);
+    }
+
+    /**
+     * Медленный ответ или ошибка уменьшает лимит, но не ниже минимума. Запрос, начатый до снижения,
+     * лимит повторно не снижает.
+     */
+    @Test
+    void slowResponseDecreasesLimitOncePerWaveTest() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 8, 20, Duration.ofMillis(100));
+        long start = System.nanoTime() + 1;
+
+        limiter.tryAcquire();
+        limiter.tryAcquire();
+        limiter.release(start, start + SLOW, false);
+        assertThat(limiter.getLimit()).isEqualTo(9);
+        limiter.release(start, start + SLOW, true);
+        assertThat(limiter.getLimit()).isEqualTo(9);
+
+        long nextStart = start + SLOW + 1;
+        limiter.tryAcquire();
+        limiter.release(nextStart, nextStart + FAST, true);
+        assertThat(limiter.getLimit()).isEqualTo(8);
+
+        limiter.tryAcquire();
+        long lastStart = nextStart + FAST + 1;
+        limiter.release(lastStart, lastStart + SLOW, false);
+        assertThat(limiter.getLimit()).isEqualTo(8);
+    }
+
+    /**
+     * Начальный лимит должен лежать между минимальным и максимальным.
+     */
+    @Test
+    void invalidLimitsTest() {
+        assertThatThrownBy(() -> new AdaptiveLimiter(0, 0, 10, Duration.ofMillis(100)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AdaptiveLimiter(20, 1, 10, Duration.ofMillis(100)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
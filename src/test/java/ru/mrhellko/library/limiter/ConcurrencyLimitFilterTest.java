@@ -0,0 +1,159 @@
+package ru.mrhellko.library.limiter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.mrhellko.library.configuration.LimiterProperties;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConcurrencyLimitFilterTest {
+
+    /**
+     * Запрос сверх лимита чтения получает 503 с Retry-After, запись при этом проходит.
+     */
+    @Test
+    void rejectOverReadLimitTest() throws Exception {
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(properties());
+        AdaptiveLimiter readLimiter = filter.getReadLimiter();
+        readLimiter.tryAcquire();
+
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        MockFilterChain rejectedChain = new MockFilterChain();
+        filter.doFilter(new MockHttpServletRequest("GET", "/books/1"), rejected, rejectedChain);
+        assertThat(rejected.getStatus()).isEqualTo(503);
+        assertThat(rejected.getHeader("Retry-After")).isEqualTo("2");
+        assertThat(rejectedChain.getRequest()).isNull();
+
+        MockHttpServletResponse accepted = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("POST", "/books"), accepted, new MockFilterChain());
+        assertThat(accepted.getStatus()).isEqualTo(200);
+        assertThat(filter.getWriteLimiter().getInFlight()).isZero();
+    }
+
+    /**
+     * Запросы /actuator не ограничиваются.
+     */
+    @Test
+    void actuatorNotLimitedTest() throws Exception {
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(properties());
+        filter.getReadLimiter().tryAcquire();
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/actuator/health"), response, new MockFilterChain());
+        assertThat(response.getStatus()).isEqualTo(200);
+    }
+
+    /**
+     * Ответ 5xx освобождает место и уменьшает лимит.
+     */
+    @Test
+    void serverErrorDecreasesLimitTest() throws Exception {
+        LimiterProperties limiterProperties = properties();
+        limiterProperties.setWrite(new LimiterProperties.Limit(10, 1, 20, Duration.ofSeconds(10)));
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(limiterProperties);
+        FilterChain failingChain = (_, response) -> ((MockHttpServletResponse) response).setStatus(500);
+
+        filter.doFilter(new MockHttpServletRequest("DELETE", "/books/1"), new MockHttpServletResponse(), failingChain);
+
+        assertThat(filter.getWriteLimiter().getLimit()).isEqualTo(9);
+        assertThat(filter.getWriteLimiter().getInFlight()).isZero();
+    }
+
+    /**
+     * Долгий запрос снижает лимит, а массовый импорт такой же длительности занимает место, но лимит не изменяет.
+     */
+    @Test
+    void bulkImportDoesNotChangeLimitTest() throws Exception {
+        LimiterProperties limiterProperties = properties();
+        limiterProperties.setWrite(new LimiterProperties.Limit(10, 1, 20, Duration.ZERO));
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(limiterProperties);
+        AdaptiveLimiter writeLimiter = filter.getWriteLimiter();
+        FilterChain slowChain = (_, _) -> {
+            assertThat(writeLimiter.getInFlight()).isEqualTo(1);
+            sleep();
+        };
+        FilterChain slowBulkChain = (request, response) -> {
+            ConcurrencyLimitFilter.markLongRunning((HttpServletRequest) request);
+            slowChain.doFilter(request, response);
+        };
+
+        filter.doFilter(new MockHttpServletRequest("POST", "/books/bulk"), new MockHttpServletResponse(), slowBulkChain);
+        filter.doFilter(new MockHttpServletRequest("POST", "/reviews/bulk/"), new MockHttpServletResponse(), slowBulkChain);
+        assertThat(writeLimiter.getLimit()).isEqualTo(10);
+        assertThat(writeLimiter.getInFlight()).isZero();
+
+        filter.doFilter(new MockHttpServletRequest("POST", "/books"), new MockHttpServletResponse(), slowChain);
+        assertThat(writeLimiter.getLimit()).isEqualTo(9);
+    }
+
+    /**
+     * Асинхронная выгрузка каталога занимает место в лимите до завершения асинхронной обработки и лимит не изменяет.
+     */
+    @Test
+    void asyncExportHoldsPermitUntilCompleteTest() throws Exception {
+        LimiterProperties limiterProperties = properties();
+        limiterProperties.setRead(new LimiterProperties.Limit(1, 1, 1, Duration.ZERO));
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(limiterProperties);
+        AdaptiveLimiter readLimiter = filter.getReadLimiter();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/books/export/");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, (servletRequest, _) -> {
+            ConcurrencyLimitFilter.markLongRunning((HttpServletRequest) servletRequest);
+            servletRequest.startAsync();
+        });
+        assertThat(readLimiter.getInFlight()).isEqualTo(1);
+
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/books/1"), rejected, new MockFilterChain());
+        assertThat(rejected.getStatus()).isEqualTo(503);
+
+        sleep();
+        ((MockAsyncContext) request.getAsyncContext()).complete();
+        assertThat(readLimiter.getInFlight()).isZero();
+        assertThat(readLimiter.getLimit()).isEqualTo(1);
+    }
+
+    /**
+     * Состояние лимитов публикуется в метриках с тегом kind.
+     */
+    @Test
+    void metricsTest() throws Exception {
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(properties());
+        MeterRegistry registry = new SimpleMeterRegistry();
+        filter.bindTo(registry);
+        filter.getReadLimiter().tryAcquire();
+        filter.doFilter(new MockHttpServletRequest("GET", "/books/1"), new MockHttpServletResponse(), new MockFilterChain());
+
+        assertThat(registry.get(ConcurrencyLimitFilter.LIMIT_GAUGE).tag("kind", "read").gauge().value()).isEqualTo(1);
+        assertThat(registry.get(ConcurrencyLimitFilter.IN_FLIGHT_GAUGE).tag("kind", "read").gauge().value()).isEqualTo(1);
+        assertThat(registry.get(ConcurrencyLimitFilter.REJECTED_COUNTER).tag("kind", "read").functionCounter().count())
+                .isEqualTo(1);
+        assertThat(registry.get(ConcurrencyLimitFilter.LIMIT_GAUGE).tag("kind", "write").gauge().value()).isEqualTo(10);
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(2);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static LimiterProperties properties() {
+        LimiterProperties limiterProperties = new LimiterProperties();
+        limiterProperties.setRead(new LimiterProperties.Limit(1, 1, 1, Duration.ofSeconds(10)));
+        limiterProperties.setRetryAfter(Duration.ofSeconds(2));
+        return limiterProperties;
+    }
+}
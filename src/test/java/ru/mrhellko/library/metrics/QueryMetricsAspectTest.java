@@ -0,0 +1,106 @@
+package ru.mrhellko.library.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import ru.mrhellko.library.dao.AbstractDAOTest;
+import ru.mrhellko.library.dao.AuthorDAO;
+import ru.mrhellko.library.dao.BookDAO;
+import ru.mrhellko.library.dao.IdAllocator;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+public class QueryMetricsAspectTest extends AbstractDAOTest {
+    @Autowired
+    private BookDAO bookDAO;
+    @Autowired
+    private AuthorDAO authorDAO;
+    @Autowired
+    private IdAllocator idAllocator;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private QueryMetricsAspect queryMetricsAspect;
+
+    /**
+     * Запрос через JdbcTemplate замеряется под именем константы и учитывает прочитанные строки.
+     */
+    @Test
+    void jdbcTemplateQueryTest() {
+        long countBefore = getTimerCount("BookDAO.GET_ALL_BOOKS_SQL");
+
+        bookDAO.getAll(0, 4);
+
+        assertThat(getTimerCount("BookDAO.GET_ALL_BOOKS_SQL")).isEqualTo(countBefore + 1);
+        DistributionSummary rows = meterRegistry.find(QueryMetricsAspect.QUERY_ROWS)
+                .tag("query", "BookDAO.GET_ALL_BOOKS_SQL")
+                .summary();
+        assertThat(rows).isNotNull();
+        assertThat(rows.max()).isEqualTo(4);
+    }
+
+    /**
+     * Запрос через NamedParameterJdbcTemplate замеряется один раз, без вложенного вызова JdbcTemplate.
+     */
+    @Test
+    void namedParameterJdbcTemplateQueryTest() {
+        long namedBefore = getTimerCount("AuthorDAO.GET_AUTHORS_FOR_BOOKS_SQL");
+        long unknownBefore = getTimerCount(QueryMetricsAspect.UNKNOWN_QUERY);
+
+        authorDAO.getAuthorsForBooks(Set.of(1L, 4L));
+
+        assertThat(getTimerCount("AuthorDAO.GET_AUTHORS_FOR_BOOKS_SQL")).isEqualTo(namedBefore + 1);
+        assertThat(getTimerCount(QueryMetricsAspect.UNKNOWN_QUERY)).isEqualTo(unknownBefore);
+    }
+
+    /**
+     * Запрос по шаблону String.format замеряется под именем шаблона.
+     */
+    @Test
+    void templateQueryTest() {
+        long countBefore = getTimerCount("IdAllocator.GET_NEXT_SEQUENCE_VALUE_SQL");
+
+        for (int i = 0; i <= IdAllocator.BLOCK_SIZE; i++) {
+            idAllocator.nextId("genres_seq");
+        }
+
+        assertThat(getTimerCount("IdAllocator.GET_NEXT_SEQUENCE_VALUE_SQL")).isGreaterThan(countBefore);
+    }
+
+    /**
+     * Операция мимо JdbcTemplate замеряется явно и учитывает затронутые строки.
+     */
+    @Test
+    void measureUpdateTest() {
+        long countBefore = getTimerCount(QueryMetricsAspect.UNKNOWN_QUERY);
+        double rowsBefore = getRowsTotal(QueryMetricsAspect.UNKNOWN_QUERY);
+
+        long rows = queryMetricsAspect.measureUpdate("copy test from stdin", () -> 7L);
+
+        assertThat(rows).isEqualTo(7);
+        assertThat(getTimerCount(QueryMetricsAspect.UNKNOWN_QUERY)).isEqualTo(countBefore + 1);
+        assertThat(getRowsTotal(QueryMetricsAspect.UNKNOWN_QUERY)).isEqualTo(rowsBefore + 7);
+    }
+
+    private double getRowsTotal(String queryName) {
+        DistributionSummary rows = meterRegistry.find(QueryMetricsAspect.QUERY_ROWS)
+                .tag("query", queryName)
+                .summary();
+        return rows == null ? 0 : rows.totalAmount();
+    }
+
+    private long getTimerCount(String queryName) {
+        Timer timer = meterRegistry.find(QueryMetricsAspect.QUERY_TIMER)
+                .tag("query", queryName)
+                .timer();
+        return timer == null ? 0 : timer.count();
+    }
+}
@@ -1,20 +1,20 @@
 INSERT INTO books (id, book_name)
-VALUES (nextval('books_seq'), 'Гарри Поттер');
+VALUES (1, 'Гарри Поттер');
 INSERT INTO books (id, book_name)
-VALUES (nextval('books_seq'), 'Задача трех тел');
+VALUES (2, 'Задача трех тел');
 INSERT INTO books (id, book_name)
-VALUES (nextval('books_seq'), 'Игра престолов');
+VALUES (3, 'Игра престолов');
 
 INSERT INTO book_reviews (id, book_id, rating, reviewer_name, review_text)
-VALUES (nextval('book_reviews_seq'),(select id from books where book_name = 'Гарри Поттер'), 8, 'Anna', 'Книга детства! Рекомендую!');
+VALUES (1, (select id from books where book_name = 'Гарри Поттер'), 8, 'Anna', 'Книга детства! Рекомендую!');
 INSERT INTO book_reviews (id, book_id, rating, reviewer_name, review_text)
-VALUES (nextval('book_reviews_seq'), (select id from books where book_name = 'Задача трех тел'), 7, 'Sergei', 'Не знаю о чем она, я все забыл.');
+VALUES (2, (select id from books where book_name = 'Задача трех тел'), 7, 'Sergei', 'Не знаю о чем она, я все забыл.');
 INSERT INTO book_reviews (id, book_id, rating, reviewer_name, review_text)
-VALUES (nextval('book_reviews_seq'), (select id from books where book_name = 'Гарри Поттер'), 3, 'Sergei', 'Скука, для детей.');
+VALUES (3, (select id from books where book_name = 'Гарри Поттер'), 3, 'Sergei', 'Скука, для детей.');
 
-INSERT INTO authors (id, author_name) VALUES (nextval('authors_seq'), 'Joan Rowling');
-INSERT INTO authors (id, author_name) VALUES (nextval('authors_seq'), 'Лю Цысинь');
-INSERT INTO authors (id, author_name) VALUES (nextval('authors_seq'), 'Джордж Мартин');
+INSERT INTO authors (id, author_name) VALUES (1, 'Joan Rowling');
+INSERT INTO authors (id, author_name) VALUES (2, 'Лю Цысинь');
+INSERT INTO authors (id, author_name) VALUES (3, 'Джордж Мартин');
 
 INSERT INTO book_authors (book_id, author_id)
 SELECT b.id, a.id
@@ -35,11 +35,11 @@ FROM books b
 WHERE b.book_name = 'Игра престолов';
 
 INSERT INTO books (id, book_name)
-VALUES (nextval('books_seq'), 'Благие знамения');
+VALUES (4, 'Благие знамения');
 INSERT INTO authors (id, author_name)
-VALUES (nextval('authors_seq'), 'Терри Пратчетт');
+VALUES (4, 'Терри Пратчетт');
 INSERT INTO authors (id, author_name)
-VALUES (nextval('authors_seq'), 'Нил Гейман');
+VALUES (5, 'Нил Гейман');
 
 INSERT INTO book_authors (book_id, author_id)
 SELECT b.id, a.id
@@ -54,9 +54,9 @@ FROM books b
 where b.book_name = 'Благие знамения';
 
 INSERT INTO books (id, book_name)
-VALUES (nextval('books_seq'), 'Бесконечная земля');
+VALUES (5, 'Бесконечная земля');
 INSERT INTO authors (id, author_name)
-VALUES (nextval('authors_seq'), 'Стивен Бакстер');
+VALUES (6, 'Стивен Бакстер');
 
 INSERT INTO book_authors (book_id, author_id)
 SELECT b.id, a.id
@@ -71,11 +71,11 @@ FROM books b
 where b.book_name = 'Бесконечная земля';
 
 INSERT INTO books (id, book_name)
-VALUES (nextval('books_seq'), 'Одноэтажная Америка');
+VALUES (6, 'Одноэтажная Америка');
 INSERT INTO authors (id, author_name)
-VALUES (nextval('authors_seq'), 'Илья Ильф');
+VALUES (7, 'Илья Ильф');
 INSERT INTO authors (id, author_name)
-VALUES (nextval('authors_seq'), 'Евгений Петров');
+VALUES (8, 'Евгений Петров');
 
 INSERT INTO book_authors (book_id, author_id)
 SELECT b.id, a.id
@@ -90,20 +90,20 @@ FROM books b
 where b.book_name = 'Одноэтажная Америка';
 
 INSERT INTO book_reviews (id, book_id, rating, reviewer_name, review_text)
-VALUES (nextval('book_reviews_seq'), (select id from books where book_name = 'Благие знамения'), 10, 'Fiona', 'Перечитываю каждый месяц!');
+VALUES (4, (select id from books where book_name = 'Благие знамения'), 10, 'Fiona', 'Перечитываю каждый месяц!');
 
 INSERT INTO genres (id, genre_name)
-VALUES (nextval('genres_seq'), 'Фэнтези');
+VALUES (1, 'Фэнтези');
 INSERT INTO genres (id, genre_name)
-VALUES (nextval('genres_seq'), 'Драма');
+VALUES (2, 'Драма');
 INSERT INTO genres (id, genre_name)
-VALUES (nextval('genres_seq'), 'Научная фантастика');
+VALUES (3, 'Научная фантастика');
 INSERT INTO genres (id, genre_name)
-VALUES (nextval('genres_seq'), 'Средневековье');
+VALUES (4, 'Средневековье');
 INSERT INTO genres (id, genre_name)
-VALUES (nextval('genres_seq'), 'Роман');
+VALUES (5, 'Роман');
 INSERT INTO genres (id, genre_name)
-VALUES (nextval('genres_seq'), 'Юмор');
+VALUES (6, 'Юмор');
 
 --Добавление связей книг и жанров
 INSERT INTO book_genres (book_id, genre_id)
@@ -153,4 +153,25 @@ SELECT b.id, g.id
 FROM books b
          CROSS JOIN genres g
 where b.book_name = 'Одноэтажная Америка'
-  AND g.genre_name IN ('Юмор');
\ No newline at end of file
+  AND g.genre_name IN ('Юмор');
+
+--Сводка по оценкам заполняется так же, как в миграции
+INSERT INTO book_rating_summary (book_id, review_count, rating_sum,
+                                 rating_1, rating_2, rating_3, rating_4, rating_5,
+                                 rating_6, rating_7, rating_8, rating_9, rating_10)
+SELECT b.id,
+       count(r.rating),
+       coalesce(sum(r.rating), 0),
+       count(case when r.rating = 1 then 1 end),
+       count(case when r.rating = 2 then 1 end),
+       count(case when r.rating = 3 then 1 end),
+       count(case when r.rating = 4 then 1 end),
+       count(case when r.rating = 5 then 1 end),
+       count(case when r.rating = 6 then 1 end),
+       count(case when r.rating = 7 then 1 end),
+       count(case when r.rating = 8 then 1 end),
+       count(case when r.rating = 9 then 1 end),
+       count(case when r.rating = 10 then 1 end)
+FROM books b
+         LEFT JOIN book_reviews r ON r.book_id = b.id
+GROUP BY b.id;
\ No newline at end of file
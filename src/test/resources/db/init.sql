@@ -1,11 +1,13 @@
 DELETE FROM book_authors;
 DELETE FROM book_reviews;
 DELETE FROM book_genres;
+DELETE FROM book_rating_summary;
 DELETE FROM books;
 DELETE FROM authors;
 DELETE FROM genres;
 
-ALTER SEQUENCE books_seq RESTART WITH 1;
-ALTER SEQUENCE authors_seq RESTART WITH 1;
-ALTER SEQUENCE book_reviews_seq RESTART WITH 1;
-ALTER SEQUENCE genres_seq RESTART WITH 1;
\ No newline at end of file
+--Id тестовых данных задаются явно, новые записи получают id из блоков начиная с 1001
+ALTER SEQUENCE books_seq RESTART WITH 1001;
+ALTER SEQUENCE authors_seq RESTART WITH 1001;
+ALTER SEQUENCE book_reviews_seq RESTART WITH 1001;
+ALTER SEQUENCE genres_seq RESTART WITH 1001;